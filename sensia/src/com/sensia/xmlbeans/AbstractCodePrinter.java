@@ -17,9 +17,12 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import javax.xml.namespace.QName;
 import org.apache.xmlbeans.SchemaGlobalElement;
 import org.apache.xmlbeans.SchemaParticle;
@@ -47,7 +50,41 @@ public abstract class AbstractCodePrinter
     static final List<String> XLINK_ATTRS = Arrays.asList(new String[] {"type", "href", "role", "arcrole", "title", "show", "actuate", "nilReason"});
     static final int OGC_PROP_NILLABLE_CODE = 10;
     
+    // set to true to instrument generated read/write element methods with counters and timers
+    static final String METRICS_PROPERTY = "swe.codegen.metrics";
+    static final boolean GENERATE_METRICS = Boolean.valueOf(SystemProperties.getProperty(METRICS_PROPERTY)).booleanValue();
+    
+    // set to true to emit JFR events from top-level generated read/write element methods
+    static final String JFR_EVENTS_PROPERTY = "swe.codegen.jfrEvents";
+    static final boolean GENERATE_JFR_EVENTS = Boolean.valueOf(SystemProperties.getProperty(JFR_EVENTS_PROPERTY)).booleanValue();
+    
+    // set to true to generate Externalizable implementation classes
+    static final String EXTERNALIZABLE_PROPERTY = "swe.codegen.externalizable";
+    static final boolean GENERATE_EXTERNALIZABLE = Boolean.valueOf(SystemProperties.getProperty(EXTERNALIZABLE_PROPERTY)).booleanValue();
+
+    // set to "deep" to generate copy methods, or to "cow" for copies sharing children until first accessed
+    static final String COPY_PROPERTY = "swe.codegen.copy";
+    static final String COPY_MODE = SystemProperties.getProperty(COPY_PROPERTY);
+    static final boolean GENERATE_COPY_ON_WRITE = "cow".equals(COPY_MODE);
+    static final boolean GENERATE_COPY = GENERATE_COPY_ON_WRITE || "deep".equals(COPY_MODE);
+
+    // set to true to generate freeze methods making objects read-only once they are fully read
+    static final String FREEZE_PROPERTY = "swe.codegen.freeze";
+    static final boolean GENERATE_FREEZE = Boolean.valueOf(SystemProperties.getProperty(FREEZE_PROPERTY)).booleanValue();
+
+    // set to true to generate CBOR bindings
+    static final String CBOR_PROPERTY = "swe.codegen.cbor";
+    static final boolean GENERATE_CBOR = Boolean.valueOf(SystemProperties.getProperty(CBOR_PROPERTY)).booleanValue();
+
+    // set to true to generate protobuf schemas and bindings
+    static final String PROTOBUF_PROPERTY = "swe.codegen.protobuf";
+    static final boolean GENERATE_PROTOBUF = Boolean.valueOf(SystemProperties.getProperty(PROTOBUF_PROPERTY)).booleanValue();
+
     List<String> usedJavaTypes = new ArrayList<String>();    
+    boolean usesDecimalWriter;
+    Set<String> textWriteTypes = new TreeSet<String>();
+    Set<String> textReadTypes = new TreeSet<String>();
+    Map<String, Integer> metricNames = new LinkedHashMap<String, Integer>();
     Writer _writer;
     int _indent;
     
@@ -289,6 +326,694 @@ public abstract class AbstractCodePrinter
     }
     
     
+    /************************************************/
+    /**          Shared bindings generation         **/
+    /************************************************/
+    
+    /**
+     * @return name of property in JSON and other object notations, using
+     * lower camel case and plural form for array properties
+     */
+    String jsonNameForProperty(SchemaProperty prop)
+    {
+        String propName = NameUtil.lowerCamelCase(prop.getJavaPropertyName());
+        
+        // handle plural names
+        if (prop.extendsJavaArray() && !propName.equals("quality"))
+        {
+            if (propName.endsWith("y"))
+                propName = propName.substring(0, propName.length()-1) + "ies";
+            else if (!propName.endsWith("s"))
+                propName += "s";
+        }
+        
+        return propName;
+    }
+    
+    
+    /**
+     * Prints code writing an inline text value to the XMLStreamWriter.<br/>
+     * Floating point values are written by the allocation-free decimal
+     * writer generated by {@link #printDecimalWriterMethods()}
+     */
+    void printWriteTextValue(String javaType, String accessCall) throws IOException
+    {
+        if (javaType.equals(String.class.getSimpleName()))
+        {
+            emit("writer.writeCharacters(" + accessCall + ");");
+        }
+        else if (javaType.equals("double") || javaType.equals("Double"))
+        {
+            emit("writeDoubleValue(writer, " + accessCall + ");");
+            usesDecimalWriter = true;
+        }
+        else if (javaType.equals("float") || javaType.equals("Float"))
+        {
+            emit("writeFloatValue(writer, " + accessCall + ");");
+            usesDecimalWriter = true;
+        }
+        else
+            emit("writer.writeCharacters(getStringValue(" + accessCall + "));");
+    }
+    
+    
+    /**
+     * Prints helper methods writing double and float values as the shortest
+     * decimal string that parses back to the same value, directly from a
+     * reusable char buffer.<br/>
+     * Values that need more than 9 decimals or an exponent fall back to getStringValue()
+     */
+    void printDecimalWriterMethods() throws IOException
+    {
+        if (!usesDecimalWriter)
+            return;
+        
+        emit("");
+        emit("");
+        emit("// scratch buffer used to format numbers (bindings instances are not thread-safe)");
+        emit("char[] numBuffer = new char[24];");
+        
+        printJavaDoc("Writes a double value without allocating intermediate strings");
+        emit("protected void writeDoubleValue(XMLStreamWriter writer, double val) throws XMLStreamException");
+        startBlock();
+        emit("double abs = Math.abs(val);");
+        emit("if (abs >= 1e-3 && abs < 1e7)");
+        startBlock();
+        emit("long scale = 1;");
+        emit("for (int decimals = 0; decimals <= 9; decimals++, scale *= 10)");
+        startBlock();
+        emit("long digits = Math.round(abs * scale);");
+        emit("if (digits < (1L << 53) && digits / (double)scale == abs)");
+        startBlock();
+        emit("writeDecimal(writer, val < 0, digits, decimals);");
+        emit("return;");
+        endBlock();
+        endBlock();
+        endBlock();
+        emit("");
+        emit("writer.writeCharacters(getStringValue(val));");
+        endBlock();
+        
+        printJavaDoc("Writes a float value without allocating intermediate strings");
+        emit("protected void writeFloatValue(XMLStreamWriter writer, float val) throws XMLStreamException");
+        startBlock();
+        emit("float abs = Math.abs(val);");
+        emit("if (abs >= 1e-3f && abs < 1e7f)");
+        startBlock();
+        emit("int scale = 1;");
+        emit("for (int decimals = 0; decimals <= 7; decimals++, scale *= 10)");
+        startBlock();
+        emit("long digits = Math.round((double)abs * scale);");
+        emit("if (digits < (1L << 24) && (float)digits / (float)scale == abs)");
+        startBlock();
+        emit("writeDecimal(writer, val < 0, digits, decimals);");
+        emit("return;");
+        endBlock();
+        endBlock();
+        endBlock();
+        emit("");
+        emit("writer.writeCharacters(getStringValue(val));");
+        endBlock();
+        
+        printJavaDoc("Writes digits*10^-decimals in plain decimal notation");
+        emit("protected void writeDecimal(XMLStreamWriter writer, boolean negative, long digits, int decimals) throws XMLStreamException");
+        startBlock();
+        emit("char[] buf = numBuffer;");
+        emit("int pos = buf.length;");
+        emit("");
+        emit("if (decimals == 0)");
+        indent();
+        emit("buf[--pos] = '0';");
+        outdent();
+        emit("for (int i = 0; i < decimals; i++, digits /= 10)");
+        indent();
+        emit("buf[--pos] = (char)('0' + digits % 10);");
+        outdent();
+        emit("buf[--pos] = '.';");
+        emit("");
+        emit("do");
+        startBlock();
+        emit("buf[--pos] = (char)('0' + digits % 10);");
+        emit("digits /= 10;");
+        endBlock();
+        emit("while (digits > 0);");
+        emit("");
+        emit("if (negative)");
+        indent();
+        emit("buf[--pos] = '-';");
+        outdent();
+        emit("");
+        emit("writer.writeCharacters(buf, pos, buf.length - pos);");
+        endBlock();
+    }
+    
+    
+    /**
+     * @return expression converting a value with no native binary encoding
+     * (e.g. date/time) to the same text as in XML, see {@link #printTextValuesClass()}
+     */
+    String getTextValueWriteCall(String javaType, String accessCall)
+    {
+        textWriteTypes.add(javaType);
+        return "textValues.toText(" + accessCall + ")";
+    }
+    
+    
+    /**
+     * @return expression converting text back to a value of the given simple type
+     */
+    String getTextValueReadCall(SchemaType sType, String javaType, String textCall)
+    {
+        if (sType != null && sType.isSimpleType() && sType.hasStringEnumValues())
+            return javaType + ".fromString(" + textCall + ")";
+        
+        textReadTypes.add(javaType);
+        return "textValues.get" + NameUtil.upperCamelCase(javaType) + "(" + textCall + ")";
+    }
+    
+    
+    /**
+     * Prints a nested class converting runtime value types from and to text
+     * with the XML bindings conversions, for binary bindings that encode such
+     * values as strings.<br/>
+     * Only the nested class extends the XML bindings base class, so the binary
+     * bindings themselves don't inherit the XML reading and writing methods.
+     */
+    void printTextValuesClass() throws IOException
+    {
+        if (textWriteTypes.isEmpty() && textReadTypes.isEmpty())
+            return;
+        
+        emit("");
+        emit("");
+        emit("TextValues textValues = new TextValues();");
+        
+        printJavaDoc("Text conversions of runtime value types, shared with the XML bindings");
+        emit("static class TextValues extends AbstractXMLStreamBindings");
+        startBlock();
+        boolean first = true;
+        for (String javaType: textWriteTypes)
+        {
+            if (!first)
+                emit("");
+            emit("String toText(" + javaType + " val)");
+            startBlock();
+            emit("return getStringValue(val);");
+            endBlock();
+            first = false;
+        }
+        
+        for (String javaType: textReadTypes)
+        {
+            String typeName = NameUtil.upperCamelCase(javaType);
+            if (!first)
+                emit("");
+            emit(javaType + " get" + typeName + "(String val)");
+            startBlock();
+            emit("return get" + typeName + "FromString(val);");
+            endBlock();
+            first = false;
+        }
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints imports needed by the metrics registry, if metrics generation is enabled
+     */
+    void printMetricsImports() throws IOException
+    {
+        if (!GENERATE_METRICS)
+            return;
+        
+        emit("import java.lang.management.ManagementFactory;");
+        emit("import java.util.HashMap;");
+        emit("import java.util.concurrent.atomic.LongAdder;");
+        emit("import javax.management.Attribute;");
+        emit("import javax.management.AttributeList;");
+        emit("import javax.management.AttributeNotFoundException;");
+        emit("import javax.management.DynamicMBean;");
+        emit("import javax.management.JMException;");
+        emit("import javax.management.MBeanAttributeInfo;");
+        emit("import javax.management.MBeanInfo;");
+        emit("import javax.management.MBeanOperationInfo;");
+        emit("import javax.management.MBeanParameterInfo;");
+        emit("import javax.management.ObjectName;");
+        emit("import javax.management.ReflectionException;");
+    }
+    
+    
+    /**
+     * Prints code starting the timer of a read/write element method.<br/>
+     * Must be followed by the method body and a call to {@link #printEndMetrics(String, String, String)}.
+     * Nothing is printed if metrics generation is disabled.
+     * The char offset is only read when char counting is enabled on the generated registry,
+     * since getting it from the reader location can be costly.
+     * @param offsetCall expression giving the current char offset in the input, or null
+     */
+    void printStartMetrics(String offsetCall) throws IOException
+    {
+        if (!GENERATE_METRICS)
+            return;
+        
+        emit("long metricsStart = System.nanoTime();");
+        if (offsetCall != null)
+            emit("long metricsOffset = metrics.countChars ? " + offsetCall + " : -1;");
+        emit("try");
+        startBlock();
+    }
+    
+    
+    /**
+     * Prints code recording the time spent in a read/write element method
+     * @param eltName element name the metrics are recorded for
+     * @param recordMethod name of record method in the generated registry (recordRead or recordWrite)
+     * @param offsetCall same expression as given to {@link #printStartMetrics(String)}, or null
+     */
+    void printEndMetrics(String eltName, String recordMethod, String offsetCall) throws IOException
+    {
+        if (!GENERATE_METRICS)
+            return;
+        
+        Integer index = metricNames.get(eltName);
+        if (index == null)
+        {
+            index = metricNames.size();
+            metricNames.put(eltName, index);
+        }
+        
+        String charCount = (offsetCall != null) ? "metricsOffset >= 0 ? " + offsetCall + " - metricsOffset : -1" : "-1";
+        endBlock();
+        emit("finally");
+        startBlock();
+        if (recordMethod.equals("recordRead"))
+            emit("metrics.recordRead(" + index + ", metricsStart, " + charCount + ");");
+        else
+            emit("metrics." + recordMethod + "(" + index + ", metricsStart);");
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints the static metrics registry shared by all instances of a bindings class.<br/>
+     * Counters are LongAdders so they can be updated concurrently with little
+     * contention by bindings used in different threads, and are exported through
+     * JMX as a DynamicMBean with attributes named {@code <element>.<stat>}.
+     * Nothing is printed if metrics generation is disabled.
+     * @param objectName JMX object name used when registering the metrics
+     */
+    void printMetricsRegistry(String objectName) throws IOException
+    {
+        if (!GENERATE_METRICS || metricNames.isEmpty())
+            return;
+        
+        StringBuilder names = new StringBuilder();
+        for (String name: metricNames.keySet())
+        {
+            if (names.length() > 0)
+                names.append(", ");
+            names.append('"').append(name).append('"');
+        }
+        
+        emit("");
+        emit("");
+        emit("// hot path metrics of read/write element methods, indexed as in the read/write methods");
+        emit("public static final BindingsMetrics metrics = new BindingsMetrics(new String[] {" + names + "});");
+        
+        printJavaDoc("Registers the metrics of these bindings with the platform MBean server");
+        emit("public static void registerMBean() throws JMException");
+        startBlock();
+        emit("ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(\"" + objectName + "\"));");
+        endBlock();
+        
+        emit("");
+        emit("");
+        emit("/**");
+        emit(" * Per element counters and timers of read/write methods.<br/>");
+        emit(" * Times are in nanoseconds and include time spent in nested elements.");
+        emit(" */");
+        emit("public static class BindingsMetrics implements DynamicMBean");
+        startBlock();
+        emit("static final String[] STATS = {\"readCount\", \"readTimeNanos\", \"readChars\", \"writeCount\", \"writeTimeNanos\"};");
+        emit("static final int READ_COUNT = 0, READ_TIME = 1, READ_CHARS = 2, WRITE_COUNT = 3, WRITE_TIME = 4;");
+        emit("");
+        emit("final String[] names;");
+        emit("final LongAdder[][] counters;");
+        emit("final Map<String, Integer> indexes = new HashMap<>();");
+        emit("volatile boolean countChars;");
+        emit("");
+        emit("BindingsMetrics(String[] names)");
+        startBlock();
+        emit("this.names = names;");
+        emit("this.counters = new LongAdder[STATS.length][names.length];");
+        emit("for (int i = 0; i < names.length; i++)");
+        startBlock();
+        emit("indexes.put(names[i], i);");
+        emit("for (int s = 0; s < STATS.length; s++)");
+        indent();
+        emit("counters[s][i] = new LongAdder();");
+        outdent();
+        endBlock();
+        endBlock();
+        emit("");
+        emit("/**");
+        emit(" * Enables counting of chars consumed by read methods.<br/>");
+        emit(" * This is off by default because it reads the reader location twice per element.");
+        emit(" */");
+        emit("public void setCountChars(boolean countChars)");
+        startBlock();
+        emit("this.countChars = countChars;");
+        endBlock();
+        emit("");
+        emit("public void recordRead(int i, long startTime, long chars)");
+        startBlock();
+        emit("counters[READ_TIME][i].add(System.nanoTime() - startTime);");
+        emit("counters[READ_COUNT][i].increment();");
+        emit("if (chars > 0)");
+        indent();
+        emit("counters[READ_CHARS][i].add(chars);");
+        outdent();
+        endBlock();
+        emit("");
+        emit("public void recordWrite(int i, long startTime)");
+        startBlock();
+        emit("counters[WRITE_TIME][i].add(System.nanoTime() - startTime);");
+        emit("counters[WRITE_COUNT][i].increment();");
+        endBlock();
+        emit("");
+        emit("public void reset()");
+        startBlock();
+        emit("for (LongAdder[] stat: counters)");
+        indent();
+        emit("for (LongAdder counter: stat)");
+        indent();
+        emit("counter.reset();");
+        outdent();
+        outdent();
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public Object getAttribute(String attribute) throws AttributeNotFoundException");
+        startBlock();
+        emit("int sep = attribute.lastIndexOf('.');");
+        emit("Integer i = (sep > 0) ? indexes.get(attribute.substring(0, sep)) : null;");
+        emit("if (i != null)");
+        startBlock();
+        emit("String stat = attribute.substring(sep+1);");
+        emit("for (int s = 0; s < STATS.length; s++)");
+        startBlock();
+        emit("if (STATS[s].equals(stat))");
+        indent();
+        emit("return counters[s][i].sum();");
+        outdent();
+        endBlock();
+        endBlock();
+        emit("throw new AttributeNotFoundException(attribute);");
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public void setAttribute(Attribute attribute) throws AttributeNotFoundException");
+        startBlock();
+        emit("throw new AttributeNotFoundException(\"Metrics are read-only\");");
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public AttributeList getAttributes(String[] attributes)");
+        startBlock();
+        emit("AttributeList list = new AttributeList();");
+        emit("for (String name: attributes)");
+        startBlock();
+        emit("try");
+        startBlock();
+        emit("list.add(new Attribute(name, getAttribute(name)));");
+        endBlock();
+        emit("catch (AttributeNotFoundException e)");
+        startBlock();
+        endBlock();
+        endBlock();
+        emit("return list;");
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public AttributeList setAttributes(AttributeList attributes)");
+        startBlock();
+        emit("return new AttributeList();");
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException");
+        startBlock();
+        emit("if (\"reset\".equals(actionName))");
+        startBlock();
+        emit("reset();");
+        emit("return null;");
+        endBlock();
+        emit("throw new ReflectionException(new NoSuchMethodException(actionName));");
+        endBlock();
+        emit("");
+        emit("@Override");
+        emit("public MBeanInfo getMBeanInfo()");
+        startBlock();
+        emit("MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[names.length * STATS.length];");
+        emit("for (int i = 0; i < names.length; i++)");
+        startBlock();
+        emit("for (int s = 0; s < STATS.length; s++)");
+        indent();
+        emit("attrs[i*STATS.length + s] = new MBeanAttributeInfo(names[i] + \".\" + STATS[s], \"long\", STATS[s] + \" of \" + names[i], true, false, false);");
+        outdent();
+        endBlock();
+        emit("MBeanOperationInfo reset = new MBeanOperationInfo(\"reset\", \"Resets all counters\", new MBeanParameterInfo[0], \"void\", MBeanOperationInfo.ACTION);");
+        emit("return new MBeanInfo(getClass().getName(), \"Bindings hot path metrics\", attrs, null, new MBeanOperationInfo[] {reset}, null);");
+        endBlock();
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints imports needed by the JFR event classes, if event generation is enabled
+     */
+    void printEventImports() throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        emit("import jdk.jfr.Category;");
+        emit("import jdk.jfr.Event;");
+        emit("import jdk.jfr.Label;");
+        emit("import jdk.jfr.Name;");
+    }
+    
+    
+    /**
+     * Prints the event state shared with dependency bindings, so that only
+     * calls made at the top of a document emit an event
+     * @param depVarNames names of dependency bindings variables
+     */
+    void printEventStateVars(Collection<String> depVarNames) throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        emit("");
+        emit("");
+        emit("// current depth, max depth and bean count of document being read or written");
+        emit("static final int EVENT_DEPTH = 0, EVENT_MAX_DEPTH = 1, EVENT_BEAN_COUNT = 2;");
+        emit("int[] eventState = new int[3];");
+        
+        printJavaDoc("Shares JFR event state with the bindings of nested namespaces",
+                new String[] {"state event state of top-level bindings"}, null, false);
+        emit("public void shareEventState(int[] state)");
+        startBlock();
+        emit("this.eventState = state;");
+        for (String varName: depVarNames)
+            emit(varName + ".shareEventState(state);");
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints code sharing event state with dependency bindings, to be called at the end of the constructor
+     */
+    void printShareEventStateCall() throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        emit("shareEventState(eventState);");
+    }
+    
+    
+    /**
+     * Prints code starting a JFR event if called at the top of a document.<br/>
+     * Must be followed by the method body and a call to {@link #printEndEvent(String)}.
+     * Nothing is printed if event generation is disabled.
+     * @param eventClass name of generated event class
+     */
+    void printStartEvent(String eventClass) throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        emit(eventClass + " event = null;");
+        emit("if (eventState[EVENT_DEPTH] == 0)");
+        startBlock();
+        emit("event = new " + eventClass + "();");
+        emit("event.begin();");
+        emit("eventState[EVENT_MAX_DEPTH] = 0;");
+        emit("eventState[EVENT_BEAN_COUNT] = 0;");
+        endBlock();
+        emit("try");
+        startBlock();
+    }
+    
+    
+    /**
+     * Prints code committing the JFR event started by {@link #printStartEvent(String)}
+     * @param eltName element name recorded in the event
+     */
+    void printEndEvent(String eltName) throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        endBlock();
+        emit("finally");
+        startBlock();
+        emit("if (event != null)");
+        indent();
+        emit("event.complete(\"" + eltName + "\", eventState);");
+        outdent();
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints code counting a bean and its depth in the event state.<br/>
+     * Must be followed by the method body and a call to {@link #printEndBeanEvent()}.
+     * Nothing is printed if event generation is disabled.
+     */
+    void printStartBeanEvent() throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        emit("eventState[EVENT_BEAN_COUNT]++;");
+        emit("if (++eventState[EVENT_DEPTH] > eventState[EVENT_MAX_DEPTH])");
+        indent();
+        emit("eventState[EVENT_MAX_DEPTH] = eventState[EVENT_DEPTH];");
+        outdent();
+        emit("try");
+        startBlock();
+    }
+    
+    
+    void printEndBeanEvent() throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        endBlock();
+        emit("finally");
+        startBlock();
+        emit("eventState[EVENT_DEPTH]--;");
+        endBlock();
+    }
+    
+    
+    /**
+     * Prints the flag and setter enabling freezing of beans by read methods.<br/>
+     * Nothing is printed if freeze methods are not generated.
+     * @param bindingVarNames names of the dependency bindings variables
+     */
+    void printFreezeBeansSetter(Collection<String> bindingVarNames) throws IOException
+    {
+        if (!GENERATE_FREEZE)
+            return;
+
+        emit("");
+        emit("");
+        emit("boolean freezeBeans;");
+
+        printJavaDoc("Enables freezing of beans once they are read, making them read-only",
+                new String[] {"freeze true to freeze beans returned by read methods, false to keep them modifiable (the default)"}, null, false);
+        emit("public void setFreezeBeans(boolean freeze)");
+        startBlock();
+        emit("this.freezeBeans = freeze;");
+        for (String varName: bindingVarNames)
+            emit(varName + ".setFreezeBeans(freeze);");
+        endBlock();
+    }
+
+
+    /**
+     * Prints code freezing the bean returned by a read type method, if enabled.<br/>
+     * Nothing is printed if freeze methods are not generated.
+     */
+    void printFreezeBean() throws IOException
+    {
+        if (!GENERATE_FREEZE)
+            return;
+
+        emit("if (freezeBeans)");
+        indent();
+        emit("bean.freeze();");
+        outdent();
+    }
+
+
+    /**
+     * Prints the JFR event classes emitted by the read/write element methods
+     * @param packageName package of the bindings, used to name the events
+     * @param format name of serialization format (e.g. Xml, Json)
+     */
+    void printEventClasses(String packageName, String format) throws IOException
+    {
+        if (!GENERATE_JFR_EVENTS)
+            return;
+        
+        printEventClass(packageName, format, "Decode");
+        printEventClass(packageName, format, "Encode");
+    }
+    
+    
+    void printEventClass(String packageName, String format, String action) throws IOException
+    {
+        String className = format + action + "Event";
+        
+        emit("");
+        emit("");
+        emit("/**");
+        emit(" * JFR event recorded for each top-level " + format + " " + action.toLowerCase() + " call");
+        emit(" */");
+        emit("@Name(\"" + packageName + "." + format + action + "\")");
+        emit("@Label(\"" + format + " " + action + "\")");
+        emit("@Category({\"SWE Bindings\", \"" + format + "\"})");
+        emit("public static class " + className + " extends Event");
+        startBlock();
+        emit("@Label(\"Element Name\")");
+        emit("String elementName;");
+        emit("");
+        emit("@Label(\"Depth\")");
+        emit("int depth;");
+        emit("");
+        emit("@Label(\"Bean Count\")");
+        emit("int beanCount;");
+        emit("");
+        emit("void complete(String elementName, int[] state)");
+        startBlock();
+        emit("end();");
+        emit("if (shouldCommit())");
+        startBlock();
+        emit("this.elementName = elementName;");
+        emit("this.depth = state[EVENT_MAX_DEPTH];");
+        emit("this.beanCount = state[EVENT_BEAN_COUNT];");
+        emit("commit();");
+        endBlock();
+        endBlock();
+        endBlock();
+    }
+    
+    
     /************************************************/
     /**           Shared Helper methods            **/
     /************************************************/
@@ -503,6 +1228,22 @@ public abstract class AbstractCodePrinter
     
     
     public SchemaType getOgcPropertyType(SchemaProperty sProp)
+    {
+        SchemaTypeAnalysis analysis = SchemaTypeAnalysis.get();
+        if (analysis == null)
+            return computeOgcPropertyType(sProp);
+        
+        // null is a valid result so check for the key
+        if (analysis.ogcPropertyTypes.containsKey(sProp))
+            return analysis.ogcPropertyTypes.get(sProp);
+        
+        SchemaType propType = computeOgcPropertyType(sProp);
+        analysis.ogcPropertyTypes.put(sProp, propType);
+        return propType;
+    }
+    
+    
+    SchemaType computeOgcPropertyType(SchemaProperty sProp)
     {
         SchemaProperty[] eltProps = sProp.getType().getElementProperties();
         if (eltProps.length > 0)
@@ -572,6 +1313,19 @@ public abstract class AbstractCodePrinter
     }
 
 
+    /**
+     * Prints a local variable holding the list of a property of the bean,
+     * so that the list getter is called only once
+     * @return name of the variable
+     */
+    String printListVariable(SchemaProperty sProp) throws IOException
+    {
+        String varName = javaVarNameForProperty(sProp);
+        emit(javaListTypeForProperty(sProp, false) + " " + varName + " = bean.get" + sProp.getJavaPropertyName() + "List();");
+        return varName;
+    }
+    
+    
     public String javaVarNameForProperty(SchemaProperty sProp)
     {
         String propertyName = sProp.getJavaPropertyName();
@@ -587,6 +1341,22 @@ public abstract class AbstractCodePrinter
 
 
     public boolean isOgcProperty(SchemaProperty sProp)
+    {
+        SchemaTypeAnalysis analysis = SchemaTypeAnalysis.get();
+        if (analysis == null)
+            return computeIsOgcProperty(sProp);
+        
+        Boolean isOgcProp = analysis.ogcProperties.get(sProp);
+        if (isOgcProp == null)
+        {
+            isOgcProp = computeIsOgcProperty(sProp);
+            analysis.ogcProperties.put(sProp, isOgcProp);
+        }
+        return isOgcProp;
+    }
+    
+    
+    boolean computeIsOgcProperty(SchemaProperty sProp)
     {
         if (Character.isLowerCase(sProp.getName().getLocalPart().charAt(0)))
         {
@@ -611,15 +1381,40 @@ public abstract class AbstractCodePrinter
 
     public boolean isComplexOgcProperty(SchemaProperty sProp)
     {
-        boolean isComplex = false;
-        
         // HACK for choice items, look if nillable code is set
+        // this is changed while printing so it is never cached
         if (sProp.hasNillable() == OGC_PROP_NILLABLE_CODE)
             return true;
         
         if (sProp.getType().getElementProperties().length > 0)
             return true;
-       
+        
+        boolean isComplex;
+        SchemaTypeAnalysis analysis = SchemaTypeAnalysis.get();
+        if (analysis == null)
+            isComplex = computeHasOgcPropertyAttributes(sProp);
+        else
+        {
+            Boolean hasAttrs = analysis.ogcPropertiesWithXlink.get(sProp);
+            if (hasAttrs == null)
+            {
+                hasAttrs = computeHasOgcPropertyAttributes(sProp);
+                analysis.ogcPropertiesWithXlink.put(sProp, hasAttrs);
+            }
+            isComplex = hasAttrs;
+        }
+        
+        if (isComplex && !sProp.extendsJavaArray())
+            addUsedJavaType(OGC_PROP_PACKAGE_NAME + OGC_PROP_IFACE_NAME);
+                    
+        return isComplex;
+    }
+    
+    
+    boolean computeHasOgcPropertyAttributes(SchemaProperty sProp)
+    {
+        boolean isComplex = false;
+        
         if (!isOgcProperty(sProp))
             return false;
         
@@ -632,9 +1427,6 @@ public abstract class AbstractCodePrinter
                 isComplex = true;
         }
         
-        if (isComplex && !sProp.extendsJavaArray())
-            addUsedJavaType(OGC_PROP_PACKAGE_NAME + OGC_PROP_IFACE_NAME);
-                    
         return isComplex;
     }
     
@@ -744,6 +1536,24 @@ public abstract class AbstractCodePrinter
     
     
     protected SchemaProperty[] getDerivedProperties(SchemaType sType)
+    {
+        SchemaTypeAnalysis analysis = SchemaTypeAnalysis.get();
+        if (analysis == null)
+            return computeDerivedProperties(sType);
+        
+        SchemaProperty[] props = analysis.derivedProperties.get(sType);
+        if (props == null)
+        {
+            props = computeDerivedProperties(sType);
+            analysis.derivedProperties.put(sType, props);
+        }
+        
+        // return a copy so callers can't change the cached array
+        return props.clone();
+    }
+    
+    
+    SchemaProperty[] computeDerivedProperties(SchemaType sType)
     {
         // We have to see if this is redefined, because if it is we have
         // to include all properties associated to its supertypes
@@ -0,0 +1,296 @@
+package com.sensia.xmlbeans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import org.apache.xmlbeans.SchemaProperty;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.impl.common.NameUtil;
+import org.apache.xmlbeans.impl.schema.SchemaTypeImpl;
+
+
+/**
+ * Mapping of schema types to protocol buffers messages, shared by the
+ * .proto schema printer and the protobuf bindings printer so that both
+ * always agree on message names and field numbers.<br/>
+ * Derived types are flattened: fields of base types come first and keep
+ * the same numbers in all derived messages, so that the code writing the
+ * fields of a base type can be reused by all derived types.<br/>
+ * Each level of a type hierarchy gets its own range of {@value #FIELD_RANGE_SIZE}
+ * field numbers, so adding fields to a base type doesn't renumber the fields
+ * of derived types.
+ */
+public abstract class AbstractProtobufPrinter extends AbstractCodePrinter
+{
+    static final int WIRE_VARINT = 0, WIRE_I64 = 1, WIRE_LEN = 2, WIRE_I32 = 5;
+    static final int VALUE_FIELD_NUM = 1;
+    static final int FIELD_RANGE_SIZE = 100;
+    static final int MAX_HIERARCHY_LEVEL = 189; // numbers 19000 to 19999 are reserved by protobuf
+    static final String CHOICE_SUFFIX = "Choice";
+    static final String PROPERTY_SUFFIX = "Property";
+    static final String ARRAY_SUFFIX = "Array";
+
+
+    /**
+     * @return the base type whose fields are inherited by the message of
+     * the given complex type, or null if none
+     */
+    SchemaType getProtoBaseType(SchemaType sType)
+    {
+        SchemaType baseType = sType.getBaseType();
+        if (baseType == null || baseType.isURType() || baseType.isSimpleType())
+            return null;
+        return baseType;
+    }
+
+
+    /**
+     * @return true if the message of the given type carries the text value
+     * of a simple content type, always as field number {@value #VALUE_FIELD_NUM}
+     */
+    boolean hasValueField(SchemaType sType)
+    {
+        return getProtoBaseType(sType) == null &&
+               !sType.isSimpleType() && !hasElements(sType) && hasTextValue(sType);
+    }
+
+
+    /**
+     * @return the properties added by the given type, in field order
+     */
+    List<SchemaProperty> getProtoProperties(SchemaType sType)
+    {
+        List<SchemaProperty> props = new ArrayList<SchemaProperty>();
+        for (SchemaProperty sProp: getDerivedPropertiesWithAttrFirst(sType))
+        {
+            // skip xlink attributes since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(sProp.getName().getLocalPart()))
+                continue;
+            props.add(sProp);
+        }
+        return props;
+    }
+
+
+    /**
+     * @return the level of the given type in its hierarchy, 0 for root types
+     */
+    int getHierarchyLevel(SchemaType sType)
+    {
+        int level = 0;
+        for (SchemaType t = getProtoBaseType(sType); t != null; t = getProtoBaseType(t))
+            level++;
+        return level;
+    }
+
+
+    /**
+     * @return the number of the first field added by the given type
+     * @throws IOException if the fields of this type don't fit in the range of its hierarchy level
+     */
+    int getFirstFieldNumber(SchemaType sType) throws IOException
+    {
+        int level = getHierarchyLevel(sType);
+        int firstNum = level * FIELD_RANGE_SIZE + 1;
+        if (hasValueField(sType))
+            firstNum = VALUE_FIELD_NUM+1;
+
+        if (level > MAX_HIERARCHY_LEVEL || firstNum + getProtoProperties(sType).size() > (level+1) * FIELD_RANGE_SIZE)
+            throw new IOException("Fields of " + getSchemaComponentLocalName(sType) + " don't fit in protobuf field number range of level " + level);
+
+        return firstNum;
+    }
+
+
+    /**
+     * @return the type of the text value carried by the given type
+     */
+    SchemaType getTextValueType(SchemaType sType)
+    {
+        SchemaType textValueType = sType;
+        while (!textValueType.isSimpleType())
+            textValueType = textValueType.getBaseType();
+        return textValueType;
+    }
+
+
+    /**
+     * @return the element or type describing the value of an object property,
+     * i.e. the global element document type if there is one
+     */
+    SchemaType getValueType(SchemaProperty sProp)
+    {
+        return getOgcPropertyElementType(sProp);
+    }
+
+
+    /**
+     * @return the type of the value of an element or the type itself
+     */
+    SchemaType getContentType(SchemaType valueType)
+    {
+        if (valueType.isDocumentType())
+            return valueType.getContentModel().getType();
+        return valueType;
+    }
+
+
+    /**
+     * @return true if values of the given element or type are encoded as
+     * scalars rather than messages
+     */
+    boolean isScalarValue(SchemaType valueType)
+    {
+        SchemaType contentType = getContentType(valueType);
+        return contentType == null || contentType.isSimpleType();
+    }
+
+
+    /**
+     * @return true if values of the given element or type can be encoded
+     */
+    boolean isSupportedValue(SchemaType valueType)
+    {
+        SchemaType contentType = getContentType(valueType);
+        return contentType != null &&
+               (contentType.isSimpleType() || MySchemaTypeSystemCompiler.isGenerated(contentType));
+    }
+
+
+    /**
+     * @return true if values of the given property can be encoded
+     */
+    boolean isSupportedProperty(SchemaProperty sProp)
+    {
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+            return true;
+
+        if (isChoice(sProp))
+        {
+            for (SchemaProperty item: sProp.getType().getElementProperties())
+            {
+                if (isSupportedValue(getChoiceItemValueType(item)))
+                    return true;
+            }
+            return false;
+        }
+
+        return isSupportedValue(getValueType(sProp));
+    }
+
+
+    /**
+     * @return the concrete elements that can substitute the given element,
+     * or an empty list if the element is not an abstract substitution group head
+     */
+    List<SchemaType> getSubstitutionMembers(SchemaType eltType)
+    {
+        List<SchemaType> members = new ArrayList<SchemaType>();
+
+        if (eltType.isDocumentType())
+        {
+            SchemaType contentType = eltType.getContentModel().getType();
+            if (eltType.isAbstract() || (contentType != null && contentType.isAbstract()))
+            {
+                for (QName subQname: ((SchemaTypeImpl)eltType).getSubstitutionGroupMembers())
+                {
+                    SchemaType elt = eltType.getTypeSystem().findDocumentType(subQname);
+                    if (elt != null && !elt.isAbstract() && isSupportedValue(elt))
+                        members.add(elt);
+                }
+            }
+        }
+
+        return members;
+    }
+
+
+    /**
+     * @return the element or type describing the given choice item
+     */
+    SchemaType getChoiceItemValueType(SchemaProperty item)
+    {
+        SchemaType eltType = item.getContainerType().getTypeSystem().findDocumentType(item.getName());
+        if (eltType == null)
+            eltType = item.getType();
+        return eltType;
+    }
+
+
+    /**
+     * @return the name of the message of an element or complex type, unique in its package
+     */
+    String getMessageName(SchemaType valueType)
+    {
+        if (valueType.isDocumentType())
+        {
+            if (!getSubstitutionMembers(valueType).isEmpty())
+                return NameUtil.upperCamelCase(getSchemaComponentLocalName(valueType)) + CHOICE_SUFFIX;
+            return getMessageName(valueType.getContentModel().getType());
+        }
+
+        // use name of java class, including outer class for anonymous types
+        String javaName = valueType.getFullJavaName();
+        javaName = javaName.substring(getJavaPackage(valueType, false).length() + 1);
+        return javaName.replace('$', '_').replace('.', '_');
+    }
+
+
+    /**
+     * @return the name of the message wrapping the items of a choice property
+     */
+    String getChoiceMessageName(SchemaProperty sProp)
+    {
+        return getMessageName(sProp.getContainerType()) + "_" + sProp.getJavaPropertyName() + CHOICE_SUFFIX;
+    }
+
+
+    /**
+     * @return the name of the field holding the given element in choice messages
+     */
+    String getChoiceFieldName(SchemaType eltType)
+    {
+        return NameUtil.lowerCamelCase(getSchemaComponentLocalName(eltType));
+    }
+
+
+    /**
+     * @return the protobuf scalar type used to encode the given java type
+     */
+    String getProtoScalarType(String javaType)
+    {
+        if (javaType.equals("String"))
+            return "string";
+        else if (javaType.equals("double") || javaType.equals("Double"))
+            return "double";
+        else if (javaType.equals("float") || javaType.equals("Float"))
+            return "float";
+        else if (javaType.equals("boolean") || javaType.equals("Boolean"))
+            return "bool";
+        else if (javaType.equals("long") || javaType.equals("Long"))
+            return "int64";
+        else if (javaType.equals("int") || javaType.equals("Integer") ||
+                 javaType.equals("short") || javaType.equals("Short") ||
+                 javaType.equals("byte") || javaType.equals("Byte"))
+            return "int32";
+        else
+            return "string"; // other values are written as text
+    }
+
+
+    /**
+     * @return the name of the message wrapping a packed array, used for list items
+     * that are themselves arrays since repeated fields cannot be nested
+     */
+    String getArrayMessageName(String protoType)
+    {
+        return NameUtil.upperCamelCase(protoType) + ARRAY_SUFFIX;
+    }
+
+
+    boolean isList(SchemaProperty sProp)
+    {
+        return !sProp.isAttribute() && sProp.extendsJavaArray();
+    }
+}
@@ -0,0 +1,294 @@
+package com.sensia.xmlbeans;
+
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.xmlbeans.SchemaTypeSystem;
+import org.apache.xmlbeans.XmlOptions;
+
+
+/**
+ * Loads the factory and XML bindings generated for a package from any
+ * class loader (e.g. classes compiled at runtime) and exposes their read
+ * and write methods through dispatch tables, so they can be used without
+ * compile time dependency on the generated code.<br/>
+ * Entries of the tables are functional objects spun by LambdaMetafactory,
+ * each calling one generated method directly, so that the JIT can inline
+ * the generated code into them. Only the methods listed in the ENTRY_POINTS
+ * constant of the bindings class are registered, which leaves out the
+ * attribute and element helpers of each type. The functions are defined with
+ * the lookup provided by the bindings class, so that they are loaded by the
+ * same class loader as the generated code.<br/>
+ * Write methods are overloaded when elements of different types share the same
+ * name, so several write methods can be registered for one name and the one
+ * accepting the most specific bean type is selected when writing.<br/>
+ * The class loader of the bindings must be able to load this class.
+ */
+public class BindingsLoader
+{
+    /**
+     * Reads a bean with a generated read method
+     */
+    public interface ReadFunction
+    {
+        Object read(XMLStreamReader reader) throws XMLStreamException;
+    }
+
+
+    /**
+     * Writes a bean with a generated write method
+     */
+    public interface WriteFunction
+    {
+        void write(XMLStreamWriter writer, Object bean) throws XMLStreamException;
+    }
+
+
+    static class WriteMethod
+    {
+        final Class<?> beanType;
+        final WriteFunction function;
+
+        WriteMethod(Class<?> beanType, WriteFunction function)
+        {
+            this.beanType = beanType;
+            this.function = function;
+        }
+    }
+
+
+    static final String ENTRY_POINTS_FIELD = "ENTRY_POINTS";
+    static final String LOOKUP_METHOD = "bindingsLookup";
+    static final MethodType READ_FUNCTION_TYPE = MethodType.methodType(Object.class, XMLStreamReader.class);
+    static final MethodType WRITE_FUNCTION_TYPE = MethodType.methodType(void.class, XMLStreamWriter.class, Object.class);
+
+    Object factory;
+    Object bindings;
+    Map<String, ReadFunction> readMethods = new HashMap<String, ReadFunction>();
+    Map<String, List<WriteMethod>> writeMethods = new HashMap<String, List<WriteMethod>>();
+
+
+    public BindingsLoader(ClassLoader classLoader, String packageName) throws ReflectiveOperationException
+    {
+        factory = newDefaultFactory(classLoader, packageName);
+
+        // instantiate bindings with factories of all packages it depends on
+        String bindingsClassName = SchemaTypeReadWriteXMLPrinter.getBindingsFullClassName(packageName);
+        Class<?> bindingsClass = Class.forName(bindingsClassName, true, classLoader);
+        Constructor<?> constructor = bindingsClass.getConstructors()[0];
+        Class<?>[] paramTypes = constructor.getParameterTypes();
+        Object[] factories = new Object[paramTypes.length];
+        factories[0] = factory;
+        for (int i = 1; i < paramTypes.length; i++)
+            factories[i] = newDefaultFactory(classLoader, paramTypes[i].getPackage().getName());
+        bindings = constructor.newInstance(factories);
+
+        // build dispatch tables from the main read/write methods listed by the generator
+        MethodHandles.Lookup lookup = (MethodHandles.Lookup)bindingsClass.getMethod(LOOKUP_METHOD).invoke(null);
+        Map<String, List<Method>> methodsByName = new HashMap<String, List<Method>>();
+        for (Method m: bindingsClass.getDeclaredMethods())
+        {
+            if (!Modifier.isPublic(m.getModifiers()) || Modifier.isStatic(m.getModifiers()))
+                continue;
+
+            List<Method> methods = methodsByName.get(m.getName());
+            if (methods == null)
+            {
+                methods = new ArrayList<Method>(1);
+                methodsByName.put(m.getName(), methods);
+            }
+            methods.add(m);
+        }
+
+        for (String name: (String[])bindingsClass.getField(ENTRY_POINTS_FIELD).get(null))
+        {
+            // read methods can't be overloaded since they all take a single reader
+            for (Method m: getMethods(methodsByName, "read" + name, XMLStreamReader.class))
+                readMethods.put(name, newFunction(lookup, m, ReadFunction.class, "read", READ_FUNCTION_TYPE));
+
+            List<Method> overloads = getMethods(methodsByName, "write" + name, XMLStreamWriter.class);
+            if (!overloads.isEmpty())
+            {
+                List<WriteMethod> methods = new ArrayList<WriteMethod>(overloads.size());
+                for (Method m: overloads)
+                    methods.add(new WriteMethod(m.getParameterTypes()[1], newFunction(lookup, m, WriteFunction.class, "write", WRITE_FUNCTION_TYPE)));
+                writeMethods.put(name, methods);
+            }
+        }
+    }
+
+
+    /**
+     * Generates code for the given type system, compiles it in memory and loads
+     * the bindings of one of its packages
+     * @param system compiled schema type system
+     * @param options xmlbeans options
+     * @param packageName java package of the bindings to load
+     * @return new loader
+     * @throws IOException if code generation or compilation fails
+     * @throws ReflectiveOperationException if the generated classes cannot be loaded
+     */
+    public static BindingsLoader compile(SchemaTypeSystem system, XmlOptions options, String packageName) throws IOException, ReflectiveOperationException
+    {
+        ClassLoader classLoader = InMemoryCompiler.compile(system, options, BindingsLoader.class.getClassLoader());
+        return new BindingsLoader(classLoader, packageName);
+    }
+
+
+    protected Object newDefaultFactory(ClassLoader classLoader, String packageName) throws ReflectiveOperationException
+    {
+        String className = packageName + "." +
+                SchemaTypeFactoryPrinter.FACTORY_IMPL_SUBPACKAGE_NAME + "." +
+                SchemaTypeFactoryPrinter.FACTORY_IMPL_CLASS_NAME;
+        return Class.forName(className, true, classLoader).getDeclaredConstructor().newInstance();
+    }
+
+
+    /**
+     * @return methods with the given name taking the given stream type as
+     * first parameter (and the bean as second parameter for write methods)
+     */
+    protected List<Method> getMethods(Map<String, List<Method>> methodsByName, String name, Class<?> streamType)
+    {
+        List<Method> methods = methodsByName.get(name);
+        if (methods == null)
+            return Collections.emptyList();
+
+        int paramCount = streamType == XMLStreamReader.class ? 1 : 2;
+        List<Method> selected = new ArrayList<Method>(methods.size());
+        for (Method m: methods)
+        {
+            Class<?>[] params = m.getParameterTypes();
+            if (params.length == paramCount && params[0] == streamType)
+                selected.add(m);
+        }
+        return selected;
+    }
+
+
+    /**
+     * Spins a functional object bound to the bindings instance and calling
+     * the given method directly
+     */
+    protected <T> T newFunction(MethodHandles.Lookup lookup, Method m, Class<T> functionType, String functionName, MethodType functionMethodType) throws ReflectiveOperationException
+    {
+        MethodHandle impl = lookup.unreflect(m);
+        try
+        {
+            CallSite site = LambdaMetafactory.metafactory(lookup, functionName,
+                    MethodType.methodType(functionType, m.getDeclaringClass()),
+                    functionMethodType, impl, impl.type().dropParameterTypes(0, 1));
+            return functionType.cast(site.getTarget().invoke(bindings));
+        }
+        catch (ReflectiveOperationException | RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new ReflectiveOperationException("Cannot bind " + m, e);
+        }
+    }
+
+
+    /**
+     * @return the write method accepting the most specific type of the given bean, or null if none
+     */
+    protected WriteFunction findWriteMethod(String name, Object bean)
+    {
+        List<WriteMethod> methods = writeMethods.get(name);
+        if (methods == null)
+            return null;
+
+        WriteMethod selected = null;
+        for (WriteMethod method: methods)
+        {
+            if (bean != null && !method.beanType.isInstance(bean))
+                continue;
+            if (selected == null || selected.beanType.isAssignableFrom(method.beanType))
+                selected = method;
+        }
+        return selected != null ? selected.function : null;
+    }
+
+
+    /**
+     * Reads an element or complex type using the generated read method
+     * @param name element or type name, as used in the generated read method name
+     * @param reader XML reader positioned on the element start tag
+     * @return bean built from XML content
+     * @throws XMLStreamException if no read method exists for this name or content cannot be read
+     */
+    public Object read(String name, XMLStreamReader reader) throws XMLStreamException
+    {
+        ReadFunction function = readMethods.get(name);
+        if (function == null)
+            throw new XMLStreamException("No read method for " + name);
+        return function.read(reader);
+    }
+
+
+    /**
+     * Writes a bean using the generated write method
+     * @param name element or type name, as used in the generated write method name
+     * @param writer XML writer
+     * @param bean bean to serialize
+     * @throws XMLStreamException if no write method exists for this name or bean cannot be written
+     */
+    public void write(String name, XMLStreamWriter writer, Object bean) throws XMLStreamException
+    {
+        WriteFunction function = findWriteMethod(name, bean);
+        if (function == null)
+            throw new XMLStreamException("No write method for " + name + " accepting " + (bean != null ? bean.getClass().getName() : "null"));
+        function.write(writer, bean);
+    }
+
+
+    /**
+     * @return the read function registered for the given name, or null if none.
+     * Callers reading many documents of the same kind can keep it to skip the lookup
+     */
+    public ReadFunction getReadFunction(String name)
+    {
+        return readMethods.get(name);
+    }
+
+
+    public Set<String> getReadableNames()
+    {
+        return Collections.unmodifiableSet(readMethods.keySet());
+    }
+
+
+    public Set<String> getWritableNames()
+    {
+        return Collections.unmodifiableSet(writeMethods.keySet());
+    }
+
+
+    public Object getFactory()
+    {
+        return factory;
+    }
+
+
+    public Object getBindings()
+    {
+        return bindings;
+    }
+}
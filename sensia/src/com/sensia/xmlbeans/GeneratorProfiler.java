@@ -0,0 +1,213 @@
+package com.sensia.xmlbeans;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import org.apache.xmlbeans.SystemProperties;
+import com.google.gson.stream.JsonWriter;
+
+
+/**
+ * Records where time goes during a generator run, i.e. the duration of
+ * schema compile phases and the time spent and output size of each printer,
+ * per package, and saves them as a JSON report.<br/>
+ * Profiling is enabled by setting the {@value #PROFILE_PROPERTY} system
+ * property to the path of the report file.
+ */
+public class GeneratorProfiler
+{
+    public static final String PROFILE_PROPERTY = "swe.codegen.profile";
+    static final int TIME = 0, CHARS = 1, FILES = 2;
+    static GeneratorProfiler instance;
+
+    File reportFile;
+    Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    Map<String, Map<String, long[]>> printers = new TreeMap<String, Map<String, long[]>>();
+
+
+    /**
+     * Writer counting the number of chars generated by a printer
+     */
+    class CountingWriter extends FilterWriter
+    {
+        long[] stats;
+
+        CountingWriter(Writer writer, long[] stats)
+        {
+            super(writer);
+            this.stats = stats;
+        }
+
+        @Override
+        public void write(int c) throws IOException
+        {
+            out.write(c);
+            stats[CHARS]++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            out.write(cbuf, off, len);
+            stats[CHARS] += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException
+        {
+            out.write(str, off, len);
+            stats[CHARS] += len;
+        }
+    }
+
+
+    /**
+     * @return the profiler of the current run, or null if profiling is disabled
+     */
+    public static synchronized GeneratorProfiler getInstance()
+    {
+        if (instance == null)
+        {
+            String path = SystemProperties.getProperty(PROFILE_PROPERTY);
+            if (path == null || path.length() == 0)
+                return null;
+            instance = new GeneratorProfiler(new File(path));
+        }
+
+        return instance;
+    }
+
+
+    public GeneratorProfiler(File reportFile)
+    {
+        this.reportFile = reportFile;
+    }
+
+
+    /**
+     * Adds time elapsed since startTime to the given phase
+     * @param phase name of compile or generation phase
+     * @param startTime phase start time as given by {@link System#nanoTime()}
+     * @return current time, to be used as start time of the next phase
+     */
+    public synchronized long recordPhase(String phase, long startTime)
+    {
+        long now = System.nanoTime();
+        Long time = phases.get(phase);
+        phases.put(phase, (time != null ? time : 0L) + now - startTime);
+        return now;
+    }
+
+
+    /**
+     * Adds time elapsed since startTime to the given printer and package
+     * @param printer printer name
+     * @param packageName name of package being generated
+     * @param startTime start time as given by {@link System#nanoTime()}
+     * @return current time
+     */
+    public synchronized long recordPrinter(String printer, String packageName, long startTime)
+    {
+        long now = System.nanoTime();
+        getStats(printer, packageName)[TIME] += now - startTime;
+        return now;
+    }
+
+
+    /**
+     * Wraps a writer to count the output generated by a printer
+     * @param writer writer of a generated file
+     * @param printer printer name
+     * @param packageName name of package being generated
+     * @return writer counting chars written to the given writer
+     */
+    public synchronized Writer countOutput(Writer writer, String printer, String packageName)
+    {
+        long[] stats = getStats(printer, packageName);
+        stats[FILES]++;
+        return new CountingWriter(writer, stats);
+    }
+
+
+    long[] getStats(String printer, String packageName)
+    {
+        Map<String, long[]> packages = printers.get(printer);
+        if (packages == null)
+        {
+            packages = new TreeMap<String, long[]>();
+            printers.put(printer, packages);
+        }
+
+        long[] stats = packages.get(packageName);
+        if (stats == null)
+        {
+            stats = new long[3];
+            packages.put(packageName, stats);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * Writes the JSON report and ends profiling of the current run
+     * @throws IOException if report cannot be written
+     */
+    public synchronized void writeReport() throws IOException
+    {
+        synchronized (GeneratorProfiler.class)
+        {
+            if (instance == this)
+                instance = null;
+        }
+
+        try (JsonWriter json = new JsonWriter(new FileWriter(reportFile)))
+        {
+            json.setIndent("  ");
+            json.beginObject();
+
+            json.name("phases").beginObject();
+            for (Entry<String, Long> phase: phases.entrySet())
+                json.name(phase.getKey()).beginObject().name("timeNanos").value(phase.getValue()).endObject();
+            json.endObject();
+
+            json.name("printers").beginObject();
+            for (Entry<String, Map<String, long[]>> printer: printers.entrySet())
+            {
+                long[] total = new long[3];
+                json.name(printer.getKey()).beginObject();
+                json.name("packages").beginObject();
+                for (Entry<String, long[]> pkg: printer.getValue().entrySet())
+                {
+                    writeStats(json.name(pkg.getKey()), pkg.getValue());
+                    for (int i = 0; i < total.length; i++)
+                        total[i] += pkg.getValue()[i];
+                }
+                json.endObject();
+                writeStats(json.name("total"), total);
+                json.endObject();
+            }
+            json.endObject();
+
+            json.endObject();
+        }
+
+        System.out.println("Generator profiling report saved to " + reportFile);
+    }
+
+
+    void writeStats(JsonWriter json, long[] stats) throws IOException
+    {
+        json.beginObject();
+        json.name("timeNanos").value(stats[TIME]);
+        json.name("chars").value(stats[CHARS]);
+        json.name("files").value(stats[FILES]);
+        json.endObject();
+    }
+}
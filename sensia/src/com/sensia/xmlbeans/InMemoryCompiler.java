@@ -0,0 +1,224 @@
+package com.sensia.xmlbeans;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.apache.xmlbeans.Filer;
+import org.apache.xmlbeans.SchemaTypeSystem;
+import org.apache.xmlbeans.XmlOptions;
+
+
+/**
+ * Generates the code for a type system and compiles it with the system
+ * java compiler, keeping both sources and class files in memory.<br/>
+ * Runtime classes used by the generated code (e.g. net.opengis.OgcProperty)
+ * must be available on the compiler classpath (java.class.path by default)
+ * and from the parent class loader.
+ */
+public class InMemoryCompiler
+{
+
+    /**
+     * Filer keeping generated files in memory
+     */
+    public static class InMemoryFiler implements Filer
+    {
+        Map<String, StringWriter> sources = new LinkedHashMap<String, StringWriter>();
+        Map<String, ByteArrayOutputStream> binaries = new LinkedHashMap<String, ByteArrayOutputStream>();
+
+
+        @Override
+        public OutputStream createBinaryFile(String typename) throws IOException
+        {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            binaries.put(typename, os);
+            return os;
+        }
+
+
+        @Override
+        public Writer createSourceFile(String typename) throws IOException
+        {
+            StringWriter writer = new StringWriter(4096);
+            sources.put(typename, writer);
+            return writer;
+        }
+
+
+        public Map<String, String> getSources()
+        {
+            Map<String, String> map = new LinkedHashMap<String, String>();
+            for (Entry<String, StringWriter> entry: sources.entrySet())
+                map.put(entry.getKey(), entry.getValue().toString());
+            return map;
+        }
+
+
+        public Map<String, byte[]> getBinaries()
+        {
+            Map<String, byte[]> map = new LinkedHashMap<String, byte[]>();
+            for (Entry<String, ByteArrayOutputStream> entry: binaries.entrySet())
+                map.put(entry.getKey(), entry.getValue().toByteArray());
+            return map;
+        }
+    }
+
+
+    /**
+     * Class loader defining classes from compiled bytes held in memory
+     */
+    static class InMemoryClassLoader extends ClassLoader
+    {
+        Map<String, ByteArrayOutputStream> classBytes;
+
+        InMemoryClassLoader(ClassLoader parent, Map<String, ByteArrayOutputStream> classBytes)
+        {
+            super(parent);
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException
+        {
+            ByteArrayOutputStream os = classBytes.get(name);
+            if (os == null)
+                throw new ClassNotFoundException(name);
+            byte[] bytes = os.toByteArray();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+
+    /**
+     * Source file object backed by a string
+     */
+    static class SourceFile extends SimpleJavaFileObject
+    {
+        String code;
+
+        SourceFile(String className, String code)
+        {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return code;
+        }
+    }
+
+
+    /**
+     * Class file object backed by a byte array
+     */
+    static class ClassFile extends SimpleJavaFileObject
+    {
+        ByteArrayOutputStream os;
+
+        ClassFile(String className, ByteArrayOutputStream os)
+        {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.os = os;
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return os;
+        }
+    }
+
+
+    /**
+     * Generates java code for the given type system and compiles it in memory
+     * @param system compiled schema type system
+     * @param options xmlbeans options
+     * @param parent parent of the returned class loader
+     * @return class loader giving access to the generated classes
+     * @throws IOException if code generation or compilation fails
+     */
+    public static ClassLoader compile(SchemaTypeSystem system, XmlOptions options, ClassLoader parent) throws IOException
+    {
+        InMemoryFiler filer = new InMemoryFiler();
+        if (!MySchemaTypeSystemCompiler.generateTypes(system, filer, options))
+            throw new IOException("Error while generating code for type system " + system.getName());
+        return compileSources(filer.getSources(), null, parent);
+    }
+
+
+    /**
+     * Compiles java sources in memory
+     * @param sources map of fully qualified class names to source code
+     * @param compilerOptions javac options (e.g. -classpath), or null
+     * @param parent parent of the returned class loader
+     * @return class loader giving access to the compiled classes
+     * @throws IOException if compilation fails
+     */
+    public static ClassLoader compileSources(Map<String, String> sources, List<String> compilerOptions, ClassLoader parent) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("No system java compiler available. A JDK is required");
+
+        List<JavaFileObject> sourceFiles = new ArrayList<JavaFileObject>(sources.size());
+        for (Entry<String, String> entry: sources.entrySet())
+            sourceFiles.add(new SourceFile(entry.getKey(), entry.getValue()));
+
+        // file manager sending class files to memory
+        final Map<String, ByteArrayOutputStream> classBytes = new HashMap<String, ByteArrayOutputStream>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager stdFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(stdFileManager)
+        {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling)
+            {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                classBytes.put(className, os);
+                return new ClassFile(className, os);
+            }
+        };
+
+        try
+        {
+            boolean ok = compiler.getTask(null, fileManager, diagnostics, compilerOptions, null, sourceFiles).call();
+            if (!ok)
+            {
+                StringBuilder msg = new StringBuilder("Error while compiling generated sources");
+                for (Diagnostic<? extends JavaFileObject> d: diagnostics.getDiagnostics())
+                {
+                    if (d.getKind() == Diagnostic.Kind.ERROR)
+                        msg.append('\n').append(d.toString());
+                }
+                throw new IOException(msg.toString());
+            }
+        }
+        finally
+        {
+            fileManager.close();
+        }
+
+        return new InMemoryClassLoader(parent, classBytes);
+    }
+}
@@ -29,22 +29,65 @@ import org.apache.xmlbeans.impl.schema.SchemaTypeSystemImpl;
 import com.sensia.xmlbeans.SchemaTypeFactoryPrinter;
 import com.sensia.xmlbeans.SchemaTypeReadWriteXMLPrinter;
 import java.util.Iterator;
-import java.io.FileWriter;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import javax.xml.namespace.QName;
 
 
 public class MySchemaTypeSystemCompiler
 {
+    static Set<String> classPathIndex;
+    static Map<ClassLoader, Map<String, Boolean>> contextClassPathLookups = new WeakHashMap<>();
+    
     
     public static boolean generateTypes(SchemaTypeSystem system, Filer filer, XmlOptions options)
+    {
+        // share type classification between all printers
+        SchemaTypeAnalysis.start();
+        GeneratorProfiler profiler = GeneratorProfiler.getInstance();
+        long startTime = System.nanoTime();
+        try
+        {
+            return generateAllTypes(system, filer, options);
+        }
+        finally
+        {
+            SchemaTypeAnalysis.end();
+            
+            if (profiler != null)
+            {
+                try
+                {
+                    profiler.recordPhase("generate", startTime);
+                    profiler.writeReport();
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Cannot write profiling report: " + e);
+                }
+            }
+        }
+    }
+    
+    
+    static boolean generateAllTypes(SchemaTypeSystem system, Filer filer, XmlOptions options)
     {
         // partial type systems not allowed to be saved
         if (system instanceof SchemaTypeSystemImpl && ((SchemaTypeSystemImpl)system).isIncomplete())
             return false;
         
         boolean success = true;
+        GeneratorProfiler profiler = GeneratorProfiler.getInstance();
 
         List<SchemaType> types = new ArrayList<>();
         types.addAll(Arrays.asList(system.globalTypes()));
@@ -58,6 +101,9 @@ public class MySchemaTypeSystemCompiler
         Map<String, SchemaTypeJsonSchemaPrinter> nsToJsonSchemaPrinter = new HashMap<>();
         Map<String, SchemaTypeReadWriteXMLPrinter> nsToXmlReadWritePrinter = new HashMap<>();
         Map<String, SchemaTypeReadWriteJsonPrinter> nsToJsonReadWritePrinter = new HashMap<>();
+        Map<String, SchemaTypeReadWriteCborPrinter> nsToCborReadWritePrinter = new HashMap<>();
+        Map<String, SchemaTypeProtobufSchemaPrinter> nsToProtobufSchemaPrinter = new HashMap<>();
+        Map<String, SchemaTypeReadWriteProtobufPrinter> nsToProtobufReadWritePrinter = new HashMap<>();
                 
         for (Iterator<SchemaType> i = types.iterator(); i.hasNext(); )
         {
@@ -74,17 +120,19 @@ public class MySchemaTypeSystemCompiler
                 continue;
             
             Writer writer = null;
+            long startTime;
             int lastDot = type.getFullJavaName().lastIndexOf('.');
             String packageName = type.getFullJavaName().substring(0, lastDot);
             
             if (!(type.isDocumentType() && type.isAbstract()))
             {
                 SchemaTypeCodePrinter codePrinter = new SchemaTypeCodePrinter();
+                startTime = System.nanoTime();
                 
                 // Generate interface class
                 try
                 {
-                    writer = filer.createSourceFile(fjn);
+                    writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeCodePrinter.class, packageName);
                     codePrinter.printType(writer, type);
                 }
                 catch (IOException e)
@@ -102,7 +150,7 @@ public class MySchemaTypeSystemCompiler
                     try
                     {                    
                         fjn = type.getFullJavaImplName();
-                        writer = filer.createSourceFile(fjn);
+                        writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeCodePrinter.class, packageName);
                         codePrinter.printTypeImpl(writer, type);
                     }
                     catch (IOException e)
@@ -114,16 +162,19 @@ public class MySchemaTypeSystemCompiler
                         try { if (writer != null) writer.close(); } catch (IOException e) {}
                     }
                 }
+                
+                recordTime(profiler, SchemaTypeCodePrinter.class, packageName, startTime);
             }
             
             // Generate factory interface
+            startTime = System.nanoTime();
             try
             {
                 // Create or reuse writer for this package
                 SchemaTypeFactoryPrinter codePrinter = nsToFactoryPrinter.get(packageName);
                 if (codePrinter == null) {
                     fjn = SchemaTypeFactoryPrinter.getFactoryFullClassName(packageName, false);
-                    writer = filer.createSourceFile(fjn);
+                    writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeFactoryPrinter.class, packageName);
                     codePrinter = new SchemaTypeFactoryPrinter(writer, false);
                     nsToFactoryPrinter.put(packageName, codePrinter);
                     codePrinter.startClass(packageName);
@@ -137,15 +188,17 @@ public class MySchemaTypeSystemCompiler
                 System.err.println("IO Error " + e);
                 success = false;
             }
+            recordTime(profiler, SchemaTypeFactoryPrinter.class, packageName, startTime);
             
             // Generate default factory impl
+            startTime = System.nanoTime();
             try
             {
                 // Create or reuse writer for this package
                 SchemaTypeFactoryPrinter codePrinter = nsToFactoryImplPrinter.get(packageName);
                 if (codePrinter == null) {
                     fjn = SchemaTypeFactoryPrinter.getFactoryFullClassName(packageName, true);
-                    writer = filer.createSourceFile(fjn);
+                    writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeFactoryPrinter.class, packageName);
                     codePrinter = new SchemaTypeFactoryPrinter(writer, true);
                     nsToFactoryImplPrinter.put(packageName, codePrinter);
                     codePrinter.startClass(packageName);
@@ -159,16 +212,18 @@ public class MySchemaTypeSystemCompiler
                 System.err.println("IO Error " + e);
                 success = false;
             }
+            recordTime(profiler, SchemaTypeFactoryPrinter.class, packageName, startTime);
             
             // Generate JSON schema
+            startTime = System.nanoTime();
             try
             {
                 // Create or reuse writer for this package
             	SchemaTypeJsonSchemaPrinter codePrinter = nsToJsonSchemaPrinter.get(packageName);
                 if (codePrinter == null) {
-                    fjn = SchemaTypeJsonSchemaPrinter.getSchemaFileName(packageName);
-                    //writer = filer.createSourceFile(fjn);
-                    writer = new FileWriter(packageName + ".json");
+                    fjn = SchemaTypeJsonSchemaPrinter.getSchemaFilePath(packageName);
+                    writer = new OutputStreamWriter(filer.createBinaryFile(fjn), StandardCharsets.UTF_8);
+                    writer = countOutput(profiler, writer, SchemaTypeJsonSchemaPrinter.class, packageName);
                     codePrinter = new SchemaTypeJsonSchemaPrinter(writer, true);
                     nsToJsonSchemaPrinter.put(packageName, codePrinter);
                     codePrinter.startClass(packageName);
@@ -182,15 +237,17 @@ public class MySchemaTypeSystemCompiler
                 System.err.println("IO Error " + e);
                 success = false;
             }
+            recordTime(profiler, SchemaTypeJsonSchemaPrinter.class, packageName, startTime);
             
             // Generate XML read/write methods for elements and types
+            startTime = System.nanoTime();
             try
             {
                 // Create or reuse writer for this package
                 SchemaTypeReadWriteXMLPrinter codePrinter = nsToXmlReadWritePrinter.get(packageName);
                 if (codePrinter == null) {
                     fjn = SchemaTypeReadWriteXMLPrinter.getBindingsFullClassName(packageName);
-                    writer = filer.createSourceFile(fjn);
+                    writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeReadWriteXMLPrinter.class, packageName);
                     codePrinter = new SchemaTypeReadWriteXMLPrinter(writer);
                     nsToXmlReadWritePrinter.put(packageName, codePrinter);
                    
@@ -209,15 +266,17 @@ public class MySchemaTypeSystemCompiler
                 System.err.println("IO Error " + e);
                 success = false;
             }
+            recordTime(profiler, SchemaTypeReadWriteXMLPrinter.class, packageName, startTime);
             
             // Generate JSON read/write methods for elements and types
+            startTime = System.nanoTime();
             try
             {
                 // Create or reuse writer for this package
                 SchemaTypeReadWriteJsonPrinter codePrinter = nsToJsonReadWritePrinter.get(packageName);
                 if (codePrinter == null) {
                     fjn = SchemaTypeReadWriteJsonPrinter.getBindingsFullClassName(packageName);
-                    writer = filer.createSourceFile(fjn);
+                    writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeReadWriteJsonPrinter.class, packageName);
                     codePrinter = new SchemaTypeReadWriteJsonPrinter(writer);
                     nsToJsonReadWritePrinter.put(packageName, codePrinter);
                    
@@ -236,16 +295,125 @@ public class MySchemaTypeSystemCompiler
                 System.err.println("IO Error " + e);
                 success = false;
             }
+            recordTime(profiler, SchemaTypeReadWriteJsonPrinter.class, packageName, startTime);
+            
+            // Generate CBOR read/write methods for elements and types
+            if (AbstractCodePrinter.GENERATE_CBOR)
+            {
+                startTime = System.nanoTime();
+                try
+                {
+                    // Create or reuse writer for this package
+                    SchemaTypeReadWriteCborPrinter codePrinter = nsToCborReadWritePrinter.get(packageName);
+                    if (codePrinter == null) {
+                        fjn = SchemaTypeReadWriteCborPrinter.getBindingsFullClassName(packageName);
+                        writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeReadWriteCborPrinter.class, packageName);
+                        codePrinter = new SchemaTypeReadWriteCborPrinter(writer);
+                        nsToCborReadWritePrinter.put(packageName, codePrinter);
+                        codePrinter.startClass(packageName);
+                    }
+                
+                    // Generate reader/writer class
+                    codePrinter.printReadWriteMethods(type);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("IO Error " + e);
+                    success = false;
+                }
+                recordTime(profiler, SchemaTypeReadWriteCborPrinter.class, packageName, startTime);
+            }
+            
+            // Generate protobuf schema and read/write methods
+            if (AbstractCodePrinter.GENERATE_PROTOBUF)
+            {
+                startTime = System.nanoTime();
+                try
+                {
+                    // Create or reuse printer for this package
+                    // file is only written once imports of all packages are known
+                    SchemaTypeProtobufSchemaPrinter codePrinter = nsToProtobufSchemaPrinter.get(packageName);
+                    if (codePrinter == null) {
+                        codePrinter = new SchemaTypeProtobufSchemaPrinter();
+                        nsToProtobufSchemaPrinter.put(packageName, codePrinter);
+                        codePrinter.startClass(packageName);
+                    }
+                
+                    // Generate message definitions
+                    codePrinter.printMessages(type);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("IO Error " + e);
+                    success = false;
+                }
+                recordTime(profiler, SchemaTypeProtobufSchemaPrinter.class, packageName, startTime);
+            
+                // Generate protobuf read/write methods for elements and types
+                startTime = System.nanoTime();
+                try
+                {
+                    // Create or reuse writer for this package
+                    SchemaTypeReadWriteProtobufPrinter codePrinter = nsToProtobufReadWritePrinter.get(packageName);
+                    if (codePrinter == null) {
+                        fjn = SchemaTypeReadWriteProtobufPrinter.getBindingsFullClassName(packageName);
+                        writer = countOutput(profiler, filer.createSourceFile(fjn), SchemaTypeReadWriteProtobufPrinter.class, packageName);
+                        codePrinter = new SchemaTypeReadWriteProtobufPrinter(writer);
+                        nsToProtobufReadWritePrinter.put(packageName, codePrinter);
+                        codePrinter.startClass(packageName);
+                    }
+                
+                    // Generate reader/writer class
+                    codePrinter.printReadWriteMethods(type);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("IO Error " + e);
+                    success = false;
+                }
+                recordTime(profiler, SchemaTypeReadWriteProtobufPrinter.class, packageName, startTime);
+            }
+        }
+        
+        // protoc rejects schemas importing each other so they are not saved
+        Set<String> protoCyclePackages = findProtobufImportCycles(nsToProtobufSchemaPrinter);
+        if (!protoCyclePackages.isEmpty())
+        {
+            System.err.println("Protobuf schemas of packages " + protoCyclePackages + " import each other and were not saved");
+            success = false;
         }
         
         // close all persistent writers
         for (String packageName: nsToXmlReadWritePrinter.keySet()) {
             try { 
+                long startTime = System.nanoTime();
                 nsToFactoryPrinter.get(packageName).endClassAndClose();
                 nsToFactoryImplPrinter.get(packageName).endClassAndClose();
+                startTime = recordTime(profiler, SchemaTypeFactoryPrinter.class, packageName, startTime);
                 nsToJsonSchemaPrinter.get(packageName).endClassAndClose();
+                startTime = recordTime(profiler, SchemaTypeJsonSchemaPrinter.class, packageName, startTime);
                 nsToXmlReadWritePrinter.get(packageName).endClassAndClose();
+                startTime = recordTime(profiler, SchemaTypeReadWriteXMLPrinter.class, packageName, startTime);
                 nsToJsonReadWritePrinter.get(packageName).endClassAndClose();
+                startTime = recordTime(profiler, SchemaTypeReadWriteJsonPrinter.class, packageName, startTime);
+                if (AbstractCodePrinter.GENERATE_CBOR)
+                {
+                    nsToCborReadWritePrinter.get(packageName).endClassAndClose();
+                    startTime = recordTime(profiler, SchemaTypeReadWriteCborPrinter.class, packageName, startTime);
+                }
+                if (AbstractCodePrinter.GENERATE_PROTOBUF)
+                {
+                    if (!protoCyclePackages.contains(packageName))
+                    {
+                        String fileName = SchemaTypeProtobufSchemaPrinter.getSchemaFilePath(packageName);
+                        Writer writer = new OutputStreamWriter(filer.createBinaryFile(fileName), StandardCharsets.UTF_8);
+                        writer = countOutput(profiler, writer, SchemaTypeProtobufSchemaPrinter.class, packageName);
+                        nsToProtobufSchemaPrinter.get(packageName).endClassAndClose(writer);
+                    }
+                    startTime = recordTime(profiler, SchemaTypeProtobufSchemaPrinter.class, packageName, startTime);
+                    nsToProtobufReadWritePrinter.get(packageName).endClassAndClose();
+                    recordTime(profiler, SchemaTypeReadWriteProtobufPrinter.class, packageName, startTime);
+                }
             } catch (IOException e)
             {
                 e.printStackTrace();
@@ -256,6 +424,53 @@ public class MySchemaTypeSystemCompiler
     }
     
     
+    /*
+     * Finds packages whose protobuf schemas import each other, directly or
+     * through other packages generated in this run
+     */
+    static Set<String> findProtobufImportCycles(Map<String, SchemaTypeProtobufSchemaPrinter> printers)
+    {
+        Set<String> cyclePackages = new TreeSet<>();
+        for (String packageName: printers.keySet())
+        {
+            // look for a path from imported packages back to this package
+            Set<String> visited = new HashSet<>();
+            List<String> toVisit = new ArrayList<>(printers.get(packageName).getImportedPackages());
+            while (!toVisit.isEmpty())
+            {
+                String imported = toVisit.remove(toVisit.size()-1);
+                if (imported.equals(packageName))
+                {
+                    cyclePackages.add(packageName);
+                    break;
+                }
+                
+                SchemaTypeProtobufSchemaPrinter printer = printers.get(imported);
+                if (printer != null && visited.add(imported))
+                    toVisit.addAll(printer.getImportedPackages());
+            }
+        }
+        
+        return cyclePackages;
+    }
+    
+    
+    static Writer countOutput(GeneratorProfiler profiler, Writer writer, Class<?> printerClass, String packageName)
+    {
+        if (profiler == null)
+            return writer;
+        return profiler.countOutput(writer, printerClass.getSimpleName(), packageName);
+    }
+    
+    
+    static long recordTime(GeneratorProfiler profiler, Class<?> printerClass, String packageName, long startTime)
+    {
+        if (profiler == null)
+            return System.nanoTime();
+        return profiler.recordPrinter(printerClass.getSimpleName(), packageName, startTime);
+    }
+    
+    
     public static boolean isOnClassPath(SchemaType sType)
     {
         //if (sType.isDocumentType())
@@ -273,20 +488,135 @@ public class MySchemaTypeSystemCompiler
         
         if (className.endsWith("Document"))
             className = className.substring(0, className.length()-8);
-        try
-        {
-            Class.forName(className);
+        
+        boolean found;
+        if (className.startsWith("java.") || className.startsWith("javax."))
+            found = ClassLoader.getSystemResource(className.replace('.', '/') + ".class") != null;
+        else
+            found = getClassPathIndex().contains(className) || isOnContextClassPath(className);
+        
+        if (found)
             System.out.println("Classpath includes " + className);
-            return true;
+        return found;
+    }
+    
+    
+    /*
+     * Falls back to the context class loader for classes the index can't see,
+     * e.g. when the generator runs in a build tool or IDE plugin class loader
+     * rather than from java.class.path. The system class loader is skipped since
+     * the index was built from its classpath, and results are cached per loader
+     * because misses are the normal case for the types being generated
+     */
+    static boolean isOnContextClassPath(String className)
+    {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null || classLoader == ClassLoader.getSystemClassLoader())
+            return false;
+        
+        synchronized (contextClassPathLookups)
+        {
+            Map<String, Boolean> lookups = contextClassPathLookups.get(classLoader);
+            if (lookups == null)
+            {
+                lookups = new HashMap<>();
+                contextClassPathLookups.put(classLoader, lookups);
+            }
+            
+            Boolean found = lookups.get(className);
+            if (found == null)
+            {
+                found = classLoader.getResource(className.replace('.', '/') + ".class") != null;
+                lookups.put(className, found);
+            }
+            return found;
+        }
+    }
+    
+    
+    /*
+     * Builds the set of names of all classes available on the classpath, once,
+     * so lookups don't need to load classes or throw ClassNotFoundException
+     */
+    static synchronized Set<String> getClassPathIndex()
+    {
+        if (classPathIndex != null)
+            return classPathIndex;
+        
+        classPathIndex = new HashSet<>();
+        String classPath = System.getProperty("java.class.path", "");
+        for (String entry: classPath.split(File.pathSeparator))
+        {
+            if (entry.length() == 0)
+                continue;
+            
+            File file = new File(entry);
+            try
+            {
+                if (file.isDirectory())
+                    indexClassDir(file, "");
+                else if (file.isFile())
+                    indexJarFile(file);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Cannot index classpath entry " + file + ": " + e);
+            }
         }
-        catch (ClassNotFoundException e)
+        
+        return classPathIndex;
+    }
+    
+    
+    static void indexClassDir(File dir, String packagePrefix)
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        
+        for (File f: files)
         {
-            return false;
+            String name = f.getName();
+            if (f.isDirectory())
+                indexClassDir(f, packagePrefix + name + ".");
+            else if (name.endsWith(".class"))
+                classPathIndex.add(packagePrefix + name.substring(0, name.length()-6));
+        }
+    }
+    
+    
+    static void indexJarFile(File file) throws IOException
+    {
+        try (JarFile jar = new JarFile(file))
+        {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements())
+            {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class"))
+                    classPathIndex.add(name.substring(0, name.length()-6).replace('/', '.'));
+            }
         }
     }
     
     
     public static boolean isGenerated(SchemaType sType)
+    {
+        SchemaTypeAnalysis analysis = SchemaTypeAnalysis.get();
+        if (analysis == null)
+            return computeIsGenerated(sType);
+        
+        Boolean generated = analysis.generatedTypes.get(sType);
+        if (generated == null)
+        {
+            generated = computeIsGenerated(sType);
+            analysis.generatedTypes.put(sType, generated);
+        }
+        return generated;
+    }
+    
+    
+    static boolean computeIsGenerated(SchemaType sType)
     {
         // skip xlink stuff
         QName qname = sType.getName();
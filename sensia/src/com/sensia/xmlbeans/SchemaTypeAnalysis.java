@@ -0,0 +1,46 @@
+package com.sensia.xmlbeans;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.apache.xmlbeans.SchemaProperty;
+import org.apache.xmlbeans.SchemaType;
+
+
+/**
+ * Holds the classification of schema types and properties computed during
+ * a code generation run, so that it is computed only once and shared by all
+ * printers.<br/>
+ * Like StscState, the current analysis is attached to the thread running
+ * the generation between calls to {@link #start()} and {@link #end()}.
+ * When no analysis is started, callers compute results without caching.
+ */
+public class SchemaTypeAnalysis
+{
+    private static final ThreadLocal<SchemaTypeAnalysis> currentAnalysis = new ThreadLocal<SchemaTypeAnalysis>();
+
+    Map<SchemaType, Boolean> generatedTypes = new IdentityHashMap<SchemaType, Boolean>();
+    Map<SchemaType, SchemaProperty[]> derivedProperties = new IdentityHashMap<SchemaType, SchemaProperty[]>();
+    Map<SchemaProperty, Boolean> ogcProperties = new IdentityHashMap<SchemaProperty, Boolean>();
+    Map<SchemaProperty, Boolean> ogcPropertiesWithXlink = new IdentityHashMap<SchemaProperty, Boolean>();
+    Map<SchemaProperty, SchemaType> ogcPropertyTypes = new IdentityHashMap<SchemaProperty, SchemaType>();
+
+
+    public static SchemaTypeAnalysis start()
+    {
+        SchemaTypeAnalysis analysis = new SchemaTypeAnalysis();
+        currentAnalysis.set(analysis);
+        return analysis;
+    }
+
+
+    public static SchemaTypeAnalysis get()
+    {
+        return currentAnalysis.get();
+    }
+
+
+    public static void end()
+    {
+        currentAnalysis.remove();
+    }
+}
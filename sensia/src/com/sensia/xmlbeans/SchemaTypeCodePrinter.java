@@ -1,11 +1,18 @@
 package com.sensia.xmlbeans;
 
 import java.io.CharArrayWriter;
+import java.io.Externalizable;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Writer;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 import javax.xml.namespace.QName;
 import org.apache.xmlbeans.impl.common.NameUtil;
 import org.apache.xmlbeans.impl.schema.SchemaPropertyImpl;
@@ -301,6 +308,12 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
                 printSimpleTypeGetterSignature(sType, false);
                 printSimpleTypeSetterSignature(sType, false);
             }
+
+            if (GENERATE_COPY)
+                printCopySignature(sType, false);
+
+            if (GENERATE_FREEZE)
+                printFreezeSignature(false);
         }
 
         printNestedTypes(sType, system);
@@ -459,19 +472,85 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
         printJavaDoc("To get the enum constant corresponding to the given String representation", false);
         emit("public static " + shortName + " fromString(String s)");
         startBlock();
+        emit("switch (s)");
+        startBlock();
         for (int i=0; i<items.length; i++)
         {
             SchemaStringEnumEntry entry = items[i];
-            String prefix = i == 0 ? "" : "else ";
-            emit(prefix + "if (s.equals(\"" + entry.getString() + "\"))");
+            emit("case \"" + entry.getString() + "\":");
             indent();
             emit("return " + entry.getEnumName() + ";");
-            outdent();            
+            outdent();
         }
+        endBlock();
         emit("");
         emit("throw new IllegalArgumentException(\"Invalid token \" + s + \" for enum " + shortName + "\");");
         endBlock();
         
+        // fromChars
+        printEnumFromCharsMethod(sType);
+        
+        endBlock();
+    }
+    
+    
+    void printEnumFromCharsMethod(SchemaType sType) throws IOException
+    {
+        String shortName = sType.getShortJavaName();
+        
+        // group tokens by length so only candidates of the right length are compared
+        Map<Integer, List<SchemaStringEnumEntry>> entriesByLength = new TreeMap<Integer, List<SchemaStringEnumEntry>>();
+        for (SchemaStringEnumEntry entry: sType.getStringEnumEntries())
+        {
+            int length = entry.getString().length();
+            List<SchemaStringEnumEntry> entries = entriesByLength.get(length);
+            if (entries == null)
+            {
+                entries = new ArrayList<SchemaStringEnumEntry>();
+                entriesByLength.put(length, entries);
+            }
+            entries.add(entry);
+        }
+        
+        emit("");
+        printJavaDoc("To get the enum constant corresponding to the given characters, without allocating a String",
+                new String[] {"buf character buffer (e.g. from XMLStreamReader.getTextCharacters())", "start offset of first character", "len number of characters"},
+                "enum constant", false);
+        emit("public static " + shortName + " fromChars(char[] buf, int start, int len)");
+        startBlock();
+        emit("switch (len)");
+        startBlock();
+        for (Entry<Integer, List<SchemaStringEnumEntry>> group: entriesByLength.entrySet())
+        {
+            emit("case " + group.getKey() + ":");
+            indent();
+            for (SchemaStringEnumEntry entry: group.getValue())
+            {
+                emit("if (matches(buf, start, \"" + entry.getString() + "\"))");
+                indent();
+                emit("return " + entry.getEnumName() + ";");
+                outdent();
+            }
+            emit("break;");
+            outdent();
+        }
+        endBlock();
+        emit("");
+        emit("throw new IllegalArgumentException(\"Invalid token \" + new String(buf, start, len) + \" for enum " + shortName + "\");");
+        endBlock();
+        
+        emit("");
+        emit("");
+        emit("private static boolean matches(char[] buf, int start, String token)");
+        startBlock();
+        emit("for (int i = 0; i < token.length(); i++)");
+        startBlock();
+        emit("if (buf[start + i] != token.charAt(i))");
+        indent();
+        emit("return false;");
+        outdent();
+        endBlock();
+        emit("return true;");
         endBlock();
     }
     
@@ -659,6 +738,28 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
     }
     
     
+    void printCopySignature(SchemaType sType, boolean impl) throws IOException
+    {
+        String javaType = sType.getShortJavaName().replace('$', '.');
+        String endDecl = impl ? "" : ";";
+        String javadocText = GENERATE_COPY_ON_WRITE ?
+            "Creates a copy of this object, sharing children with the original until either object modifies its lists or properties" :
+            "Creates a deep copy of this object, sharing only immutable values with the original";
+
+        printJavaDoc(javadocText, null, "new copy", impl);
+        emit("public " + javaType + " copy()" + endDecl);
+    }
+    
+    
+    void printFreezeSignature(boolean impl) throws IOException
+    {
+        String endDecl = impl ? "" : ";";
+        
+        printJavaDoc("Makes this object and its children read-only", impl);
+        emit("public void freeze()" + endDecl);
+    }
+
+
     void printSimpleTypeGetSetImpls(SchemaType sType) throws IOException
     {
         // TODO handle case of enumeration?          
@@ -669,6 +770,7 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
         
         printSimpleTypeSetterSignature(sType, true);
         startBlock();
+        printCheckNotFrozen();
         emit("this.value = value;");
         endBlock();
     }
@@ -711,6 +813,11 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
             extendsStatement = " extends " + baseClass;
         else if (isExtendedOgcPropertyType(sType))
             extendsStatement = " extends " + OGC_PROP_PACKAGE_NAME + OGC_PROP_CLASS_NAME + "<Object>";
+        else if (isExternalizable(sType))
+        {
+            addUsedJavaType(Externalizable.class.getCanonicalName());
+            interfaces.append(", " + Externalizable.class.getSimpleName());
+        }
         
         emit("public " + (isInner ? "static " : "") + (isAbstract ? "abstract " : "") + "class " + shortName + extendsStatement + " implements " + interfaces.toString());
 
@@ -847,6 +954,15 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
             // unless base type already takes care of it
             if (sType.getSimpleVariety() == SchemaType.ATOMIC && !MySchemaTypeSystemCompiler.isGenerated(sType.getBaseType()))
                 printSimpleTypeGetSetImpls(sType);
+            
+            if (isExternalizable(sType))
+                printExternalizableImpls(sType, properties);
+            
+            if (GENERATE_COPY)
+                printCopyImpls(sType, properties);
+            
+            if (GENERATE_FREEZE)
+                printFreezeImpls(sType, properties);
         }
 
         printNestedTypeImpls(sType, system);
@@ -923,9 +1039,12 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
         String safeVarName = javaVarNameForProperty(sProp);
         boolean several = sProp.extendsJavaArray();
 
-        // get
+        // get, returned lists and objects can be modified by the caller so they are not shared
         printPropertyGetterSignature(sProp, true);
         startBlock();
+        if (several && (isComplexOgcProperty(sProp) || hasName(sProp)))
+            printReturnIfFrozen("frozenPropertyList(" + safeVarName + ")");
+        printEnsureNotShared(isSharedField(sProp));
         if (!several && isComplexOgcProperty(sProp))
             emit("return " + safeVarName + ".getValue();");
         else
@@ -949,6 +1068,7 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
             {
                 printNamedPropertyGetterSignature(sProp, true);
                 startBlock();
+                printEnsureNotShared(true);
                 emit("if (" + safeVarName + " == null)");
                 indent();
                 emit("return null;");
@@ -966,6 +1086,8 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
                 String propType = javaTypeForProperty(sProp);
                 printOgcPropertyGetterSignature(sProp, true);
                 startBlock();
+                printReturnIfFrozen("frozenProperty(" + safeVarName + ")");
+                printEnsureNotShared(true);
                 emit("if (" + safeVarName + " == null)");
                 indent();
                 emit(safeVarName + " = new " + OGC_PROP_CLASS_NAME + "<" + propType + ">();");
@@ -1003,6 +1125,9 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
         
         printPropertySetterSignature(sProp, true);        
         startBlock();
+        printCheckNotFrozen();
+        // only list and property fields are modified in place, other fields are replaced
+        printEnsureNotShared(sProp.extendsJavaArray() || isComplexOgcProperty(sProp));
         if (sProp.extendsJavaArray())
         {
             String itemName = safeVarName.replace("List", "");
@@ -1040,6 +1165,7 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
             String safeVarName = javaVarNameForProperty(sProp);        
             printPropertyUnSetSignature(sProp, true);
             startBlock();
+            printCheckNotFrozen();
             emit("this." + safeVarName + " = null;");
             endBlock();
         }
@@ -1060,6 +1186,794 @@ public final class SchemaTypeCodePrinter extends AbstractCodePrinter implements
     }
 
 
+    /**
+     * Classes are externalizable only if their root class is generated, since
+     * the state of base classes from the runtime library cannot be written
+     */
+    boolean isExternalizable(SchemaType sType)
+    {
+        if (!GENERATE_EXTERNALIZABLE)
+            return false;
+        
+        if (sType.isDocumentType())
+        {
+            SchemaType contentType = sType.getContentModel().getType();
+            return !contentType.isSimpleType() && isExternalizable(contentType);
+        }
+        
+        SchemaType baseType = findBaseType(sType.getBaseType());
+        if (MySchemaTypeSystemCompiler.isGenerated(baseType))
+            return isExternalizable(baseType);
+        
+        return !isExtendedOgcPropertyType(sType);
+    }
+    
+    
+    void printExternalizableImpls(SchemaType sType, SchemaProperty[] properties) throws IOException
+    {
+        boolean isRoot = !sType.isDocumentType() && getBaseClass(sType) == null;
+        boolean hasValueField = sType.getSimpleVariety() == SchemaType.ATOMIC && !MySchemaTypeSystemCompiler.isGenerated(sType.getBaseType());
+        boolean hasGenericFields = false;
+        boolean hasLists = false;
+        
+        List<SchemaProperty> fields = new ArrayList<SchemaProperty>();
+        for (SchemaProperty prop: properties)
+        {
+            // skip xlink properties since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(prop.getName().getLocalPart()))
+                continue;
+            
+            fields.add(prop);
+            if (isComplexOgcProperty(prop) || hasName(prop))
+                hasGenericFields = true;
+            else if (prop.extendsJavaArray())
+                hasLists = true;
+        }
+        
+        addUsedJavaType(ObjectOutput.class.getCanonicalName());
+        addUsedJavaType(ObjectInput.class.getCanonicalName());
+        addUsedJavaType(IOException.class.getCanonicalName());
+        
+        // write fields in declaration order
+        printJavaDoc(null, true);
+        emit("public void writeExternal(ObjectOutput out) throws IOException");
+        startBlock();
+        if (!isRoot)
+            emit("super.writeExternal(out);");
+        for (SchemaProperty prop: fields)
+            printWriteExternalField(prop);
+        if (hasValueField)
+            printWriteExternalValue(javaTypeForSchemaType(sType.getBaseType()), "value", "out");
+        endBlock();
+        
+        // read them back in the same order
+        printJavaDoc(null, true);
+        if (hasGenericFields)
+            emit("@SuppressWarnings(\"unchecked\")");
+        emit("public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException");
+        startBlock();
+        if (!isRoot)
+            emit("super.readExternal(in);");
+        else
+            printCheckNotFrozen();
+        if (hasLists)
+            emit("int numItems;");
+        for (SchemaProperty prop: fields)
+            printReadExternalField(prop);
+        if (hasValueField)
+            emit("value = " + getReadExternalCall(javaTypeForSchemaType(sType.getBaseType())) + ";");
+        endBlock();
+    }
+    
+    
+    void printWriteExternalField(SchemaProperty prop) throws IOException
+    {
+        String safeVarName = javaVarNameForProperty(prop);
+        
+        // complex properties are written with their default serialization
+        if (isComplexOgcProperty(prop) || hasName(prop))
+        {
+            emit("out.writeObject(" + safeVarName + ");");
+        }
+        else if (prop.extendsJavaArray())
+        {
+            String itemType = javaListTypeForProperty(prop, true);
+            itemType = itemType.substring(itemType.indexOf('<')+1, itemType.length()-1);
+            emit("out.writeInt(" + safeVarName + ".size());");
+            emit("for (" + itemType + " item: " + safeVarName + ")");
+            indent();
+            printWriteExternalValue(itemType, "item", "out");
+            outdent();
+        }
+        else
+        {
+            String propType = javaTypeForProperty(prop);
+            if (prop.extendsJavaOption() && hasJavaPrimitiveType(prop))
+            {
+                // write presence flag before wrapped primitive
+                emit("out.writeBoolean(" + safeVarName + " != null);");
+                emit("if (" + safeVarName + " != null)");
+                indent();
+                printWriteExternalValue(propType, safeVarName, "out");
+                outdent();
+            }
+            else
+                printWriteExternalValue(propType, safeVarName, "out");
+        }
+    }
+    
+    
+    void printReadExternalField(SchemaProperty prop) throws IOException
+    {
+        String safeVarName = javaVarNameForProperty(prop);
+        
+        if (isComplexOgcProperty(prop) || hasName(prop))
+        {
+            String propType = javaTypeForProperty(prop);
+            if (prop.extendsJavaArray())
+                propType = OGC_PROP_IFACE_NAME + "List<" + propType + ">";
+            else
+                propType = OGC_PROP_IFACE_NAME + "<" + propType + ">";
+            emit(safeVarName + " = (" + propType + ")in.readObject();");
+        }
+        else if (prop.extendsJavaArray())
+        {
+            String itemType = javaListTypeForProperty(prop, true);
+            itemType = itemType.substring(itemType.indexOf('<')+1, itemType.length()-1);
+            emit("numItems = in.readInt();");
+            emit(safeVarName + " = new ArrayList<" + itemType + ">(numItems);");
+            emit("for (int i = 0; i < numItems; i++)");
+            indent();
+            emit(safeVarName + ".add(" + getReadExternalCall(itemType) + ");");
+            outdent();
+        }
+        else
+        {
+            String propType = javaTypeForProperty(prop);
+            if (prop.extendsJavaOption() && hasJavaPrimitiveType(prop))
+                emit(safeVarName + " = in.readBoolean() ? " + getReadExternalCall(propType) + " : null;");
+            else
+                emit(safeVarName + " = " + getReadExternalCall(propType) + ";");
+        }
+    }
+    
+    
+    /**
+     * @return the name of the ObjectOutput/ObjectInput method suffix for
+     * primitive and wrapped primitive types, or null for other types
+     */
+    String getPrimitiveStreamType(String javaType)
+    {
+        if (javaType.equals("Integer"))
+            return "Int";
+        else if (javaType.equals("Character") || javaType.equals("char"))
+            return null;
+        
+        String primitiveType = javaType.toLowerCase();
+        if (primitiveType.equals("int") || primitiveType.equals("long") ||
+            primitiveType.equals("short") || primitiveType.equals("byte") ||
+            primitiveType.equals("float") || primitiveType.equals("double") ||
+            primitiveType.equals("boolean"))
+            return NameUtil.upperCamelCase(primitiveType);
+        
+        return null;
+    }
+    
+    
+    void printWriteExternalValue(String javaType, String varName, String outVar) throws IOException
+    {
+        String streamType = getPrimitiveStreamType(javaType);
+        if (streamType != null)
+            emit(outVar + ".write" + streamType + "(" + varName + ");");
+        else
+            emit(outVar + ".writeObject(" + varName + ");");
+    }
+    
+    
+    String getReadExternalCall(String javaType)
+    {
+        String streamType = getPrimitiveStreamType(javaType);
+        if (streamType != null)
+            return "in.read" + streamType + "()";
+        else if (javaType.equals("Object"))
+            return "in.readObject()";
+        else
+            return "(" + javaType + ")in.readObject()";
+    }
+
+
+    /**
+     * Each class copies its own fields after those of its superclass, through
+     * a single copyFieldsTo method overridden by all classes of the hierarchy.<br/>
+     * In copy-on-write mode, fields are copied by reference and both objects
+     * are marked as shared. Children are only copied, one level at a time, by
+     * the first setter or getter returning a list, property or child object,
+     * since the caller may modify it. Immutable values never trigger a copy
+     */
+    void printCopyImpls(SchemaType sType, SchemaProperty[] properties) throws IOException
+    {
+        String shortName = sType.getShortJavaImplName();
+        boolean isRoot = !sType.isDocumentType() && getBaseClass(sType) == null;
+        boolean isOgcPropertyRoot = isRoot && isExtendedOgcPropertyType(sType);
+        boolean hasValueField = sType.getSimpleVariety() == SchemaType.ATOMIC && !MySchemaTypeSystemCompiler.isGenerated(sType.getBaseType());
+        String valueType = hasValueField ? javaTypeForSchemaType(sType.getBaseType()) : null;
+        boolean hasPropertyFields = false;
+
+        List<SchemaProperty> fields = new ArrayList<SchemaProperty>();
+        for (SchemaProperty prop: properties)
+        {
+            // skip xlink properties since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(prop.getName().getLocalPart()))
+                continue;
+
+            fields.add(prop);
+            if (isComplexOgcProperty(prop) || hasName(prop))
+                hasPropertyFields = true;
+        }
+
+        // copy, only in concrete classes
+        if (!sType.isAbstract())
+        {
+            printCopySignature(sType, true);
+            startBlock();
+            emit(shortName + " copy = new " + shortName + "();");
+            emit("copyFieldsTo(copy);");
+            if (GENERATE_COPY_ON_WRITE)
+            {
+                // frozen objects never modify their children so they don't need to copy them
+                emit("sharedFields = " + (GENERATE_FREEZE ? "!frozen;" : "true;"));
+                emit("copy.sharedFields = true;");
+            }
+            emit("return copy;");
+            endBlock();
+        }
+
+        // copyFieldsTo
+        printJavaDoc("Copies fields declared by this class and its superclasses to the given object",
+                     new String[] {"dst object of the same class receiving the field values"},
+                     null,
+                     false);
+        if (!isRoot)
+            emit("@Override");
+        emit("protected void copyFieldsTo(Object dst)");
+        startBlock();
+        if (!isRoot)
+            emit("super.copyFieldsTo(dst);");
+        if (isOgcPropertyRoot || !fields.isEmpty() || hasValueField)
+            emit(shortName + " copy = (" + shortName + ")dst;");
+        if (isOgcPropertyRoot)
+        {
+            emit("copyPropertyAttributes(this, copy);");
+            emit("copy.setValue(getValue());");
+        }
+        for (SchemaProperty prop: fields)
+        {
+            String safeVarName = javaVarNameForProperty(prop);
+            if (GENERATE_COPY_ON_WRITE)
+                emit("copy." + safeVarName + " = " + safeVarName + ";");
+            else
+                printCopyFieldValue(prop, safeVarName, "copy." + safeVarName);
+        }
+        if (hasValueField)
+        {
+            if (GENERATE_COPY_ON_WRITE)
+                emit("copy.value = value;");
+            else
+                emit("copy.value = " + getCopyExpression("value", valueType, false, true) + ";");
+        }
+        endBlock();
+
+        if (GENERATE_COPY_ON_WRITE)
+            printCopyOnWriteImpls(isRoot, fields, valueType);
+
+        if (isOgcPropertyRoot || hasPropertyFields)
+            printCopyPropertyAttributes();
+    }
+
+
+    void printCopyOnWriteImpls(boolean isRoot, List<SchemaProperty> fields, String valueType) throws IOException
+    {
+        if (isRoot)
+        {
+            emit("");
+            emit("");
+            emit("// true while children are shared with a copy of this object");
+            emit("protected transient boolean sharedFields;");
+
+            printJavaDoc("Copies children shared with a copy of this object, if any, before they are accessed or modified");
+            emit("protected void ensureNotShared()");
+            startBlock();
+            emit("if (sharedFields)");
+            startBlock();
+            emit("sharedFields = false;");
+            emit("copySharedFields();");
+            endBlock();
+            endBlock();
+        }
+
+        printJavaDoc("Replaces children shared with a copy of this object by their own copies");
+        emit("protected void copySharedFields()");
+        startBlock();
+        if (!isRoot)
+            emit("super.copySharedFields();");
+        for (SchemaProperty prop: fields)
+        {
+            if (!isSharedField(prop))
+                continue;
+
+            String safeVarName = javaVarNameForProperty(prop);
+            String propType = javaTypeForProperty(prop);
+            if (isComplexOgcProperty(prop) || hasName(prop) || prop.extendsJavaArray())
+            {
+                // keep reference to shared object while building the new one
+                String sharedVarName = safeVarName + "Shared";
+                String fieldType;
+                if (isComplexOgcProperty(prop) || hasName(prop))
+                    fieldType = OGC_PROP_IFACE_NAME + (prop.extendsJavaArray() ? "List" : "") + "<" + propType + ">";
+                else
+                    fieldType = javaListTypeForProperty(prop, true);
+                emit(fieldType + " " + sharedVarName + " = " + safeVarName + ";");
+                printCopyFieldValue(prop, sharedVarName, safeVarName);
+            }
+            else
+                emit(safeVarName + " = " + getCopyExpression(safeVarName, propType, prop, true) + ";");
+        }
+        if (valueType != null && valueType.endsWith("[]"))
+            emit("value = " + getCopyExpression("value", valueType, false, true) + ";");
+        endBlock();
+    }
+
+
+    /**
+     * Prints code assigning a copy of the field value held by srcVar to dstVar
+     */
+    void printCopyFieldValue(SchemaProperty prop, String srcVar, String dstVar) throws IOException
+    {
+        String propType = javaTypeForProperty(prop);
+
+        if (isComplexOgcProperty(prop) || hasName(prop))
+        {
+            String complexPropIface = OGC_PROP_IFACE_NAME + "<" + propType + ">";
+            String complexPropClass = OGC_PROP_CLASS_NAME + "<" + propType + ">";
+
+            if (prop.extendsJavaArray())
+            {
+                emit(dstVar + " = new " + OGC_PROP_IFACE_NAME + "List<" + propType + ">();");
+                emit("for (int i = 0; i < " + srcVar + ".size(); i++)");
+                startBlock();
+                emit(complexPropIface + " prop = " + srcVar + ".getProperty(i);");
+                emit(complexPropIface + " propCopy = new " + complexPropClass + "();");
+                printCopyPropertyValue(prop, "prop", "propCopy", propType);
+                emit(dstVar + ".add(propCopy);");
+                endBlock();
+            }
+            else
+            {
+                emit("if (" + srcVar + " != null)");
+                startBlock();
+                emit(dstVar + " = new " + complexPropClass + "();");
+                printCopyPropertyValue(prop, srcVar, dstVar, propType);
+                endBlock();
+            }
+        }
+        else if (prop.extendsJavaArray())
+        {
+            String listType = javaListTypeForProperty(prop, true);
+            String itemType = listType.substring(listType.indexOf('<')+1, listType.length()-1);
+            String itemCopy = getCopyExpression("item", itemType, prop, false);
+
+            // immutable items are shared, so the whole list can be copied at once
+            if (itemCopy.equals("item"))
+                emit(dstVar + " = new Array" + listType + "(" + srcVar + ");");
+            else
+            {
+                emit(dstVar + " = new Array" + listType + "(" + srcVar + ".size());");
+                emit("for (" + itemType + " item: " + srcVar + ")");
+                indent();
+                emit(dstVar + ".add(" + itemCopy + ");");
+                outdent();
+            }
+        }
+        else
+        {
+            if (prop.extendsJavaOption() && hasJavaPrimitiveType(prop))
+                propType = javaWrappedType(propType);
+            emit(dstVar + " = " + getCopyExpression(srcVar, propType, prop, true) + ";");
+        }
+    }
+
+
+    void printCopyPropertyValue(SchemaProperty prop, String srcVar, String dstVar, String propType) throws IOException
+    {
+        emit("copyPropertyAttributes(" + srcVar + ", " + dstVar + ");");
+        emit("if (" + srcVar + ".hasValue())");
+        indent();
+        emit(dstVar + ".setValue(" + getCopyExpression(srcVar + ".getValue()", propType, prop, false) + ");");
+        outdent();
+    }
+
+
+    void printCopyPropertyAttributes() throws IOException
+    {
+        addUsedJavaType(OGC_PROP_PACKAGE_NAME + OGC_PROP_IFACE_NAME);
+
+        emit("");
+        emit("");
+        emit("private static void copyPropertyAttributes(OgcProperty<?> prop, OgcProperty<?> copy)");
+        startBlock();
+        emit("copy.setName(prop.getName());");
+        emit("copy.setHref(prop.getHref());");
+        emit("copy.setRole(prop.getRole());");
+        emit("copy.setArcRole(prop.getArcRole());");
+        emit("copy.setTitle(prop.getTitle());");
+        endBlock();
+    }
+
+
+    /**
+     * @return expression copying the given value, or the value itself if
+     * it is immutable and can be shared
+     */
+    String getCopyExpression(String varName, String javaType, boolean copyable, boolean nullable)
+    {
+        String copyExpr;
+        if (javaType.endsWith("[]"))
+            copyExpr = varName + ".clone()";
+        else if (copyable)
+            copyExpr = varName + ".copy()";
+        else
+            return varName;
+
+        if (nullable)
+            return varName + " == null ? null : " + copyExpr;
+        return copyExpr;
+    }
+
+
+    /**
+     * @return expression copying a value of the given property, dispatching
+     * on the runtime type of the value if its declared type is not generated
+     */
+    String getCopyExpression(String varName, String javaType, SchemaProperty prop, boolean nullable)
+    {
+        List<String> choiceTypes = getGeneratedChoiceTypes(prop);
+        if (choiceTypes.isEmpty())
+            return getCopyExpression(varName, javaType, hasCopyableValue(prop), nullable);
+
+        // null is not an instance of any type so it falls through
+        String cast = javaType.equals(Object.class.getSimpleName()) ? "" : "(" + javaType + ")";
+        StringBuilder copyExpr = new StringBuilder();
+        for (String choiceType: choiceTypes)
+            copyExpr.append(varName + " instanceof " + choiceType + " ? " + cast + "((" + choiceType + ")" + varName + ").copy() : ");
+        copyExpr.append(varName);
+        return copyExpr.toString();
+    }
+
+
+    /**
+     * @return true if values of the given property are generated objects,
+     * which must be copied, false if they are immutable and can be shared
+     */
+    boolean hasCopyableValue(SchemaProperty prop)
+    {
+        if (prop.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+            return false;
+
+        SchemaType valueType;
+        if (isChoice(prop))
+            valueType = getChoiceBaseType(prop);
+        else if (isOgcProperty(prop))
+            valueType = getOgcPropertyType(prop);
+        else
+            valueType = prop.javaBasedOnType();
+
+        return valueType != null && !valueType.isSimpleType() && MySchemaTypeSystemCompiler.isGenerated(valueType);
+    }
+
+
+    /**
+     * @return common base type of all alternatives of a choice property,
+     * which is the declared type of its field
+     */
+    SchemaType getChoiceBaseType(SchemaProperty prop)
+    {
+        SchemaType baseType = null;
+        for (SchemaProperty item: prop.getType().getElementProperties())
+            baseType = (baseType == null) ? item.getType() : item.getType().getCommonBaseType(baseType);
+        return baseType;
+    }
+
+
+    /**
+     * @return java types of the generated alternatives of a choice property
+     * whose common base type is not generated, so that its values cannot be
+     * copied or frozen through the declared type, or an empty list otherwise
+     */
+    List<String> getGeneratedChoiceTypes(SchemaProperty prop)
+    {
+        List<String> choiceTypes = new ArrayList<String>();
+        if (prop.getJavaTypeCode() != SchemaProperty.XML_OBJECT || !isChoice(prop) || hasCopyableValue(prop))
+            return choiceTypes;
+
+        for (SchemaProperty item: prop.getType().getElementProperties())
+        {
+            SchemaType itemType = item.getType();
+            if (itemType.isSimpleType() || !MySchemaTypeSystemCompiler.isGenerated(itemType))
+                continue;
+
+            String javaType = javaTypeForSchemaType(itemType);
+            if (!choiceTypes.contains(javaType))
+                choiceTypes.add(javaType);
+        }
+        return choiceTypes;
+    }
+
+
+    /**
+     * @return true if the given field refers to mutable objects that are
+     * shared with copies in copy-on-write mode
+     */
+    boolean isSharedField(SchemaProperty prop)
+    {
+        if (isComplexOgcProperty(prop) || hasName(prop) || prop.extendsJavaArray())
+            return true;
+        return hasCopyableValue(prop) || !getGeneratedChoiceTypes(prop).isEmpty() || javaTypeForProperty(prop).endsWith("[]");
+    }
+
+
+    void printEnsureNotShared(boolean isShared) throws IOException
+    {
+        if (GENERATE_COPY_ON_WRITE && isShared)
+            emit("ensureNotShared();");
+    }
+
+
+    /**
+     * Freezing is done after the object is fully read, by replacing lists with
+     * compact unmodifiable ones and freezing children. Setters check the frozen
+     * flag of the root class, so fields cannot be final.<br/>
+     * Property objects and lists come from the runtime library and cannot be
+     * made read-only, so accessors of frozen objects return detached copies of them
+     */
+    void printFreezeImpls(SchemaType sType, SchemaProperty[] properties) throws IOException
+    {
+        boolean isRoot = !sType.isDocumentType() && getBaseClass(sType) == null;
+        boolean hasLists = false;
+        boolean hasPropertyFields = false;
+        boolean hasPropertyLists = false;
+
+        if (isRoot)
+        {
+            emit("");
+            emit("");
+            emit("// true once the object is read-only");
+            emit("protected boolean frozen;");
+
+            printFreezeSignature(true);
+            startBlock();
+            emit("if (!frozen)");
+            startBlock();
+            emit("frozen = true;");
+            // children shared with copies are only modified after being copied
+            if (GENERATE_COPY_ON_WRITE)
+                emit("sharedFields = false;");
+            emit("freezeFields();");
+            endBlock();
+            endBlock();
+
+            printJavaDoc("Checks that this object can still be modified");
+            emit("protected void checkNotFrozen()");
+            startBlock();
+            emit("if (frozen)");
+            indent();
+            emit("throw new IllegalStateException(getClass().getSimpleName() + \" is frozen and cannot be modified\");");
+            outdent();
+            endBlock();
+        }
+
+        printJavaDoc("Makes fields declared by this class and its superclasses read-only");
+        emit("protected void freezeFields()");
+        startBlock();
+        if (!isRoot)
+            emit("super.freezeFields();");
+        for (SchemaProperty prop: properties)
+        {
+            // skip xlink properties since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(prop.getName().getLocalPart()))
+                continue;
+
+            String safeVarName = javaVarNameForProperty(prop);
+            boolean isBean = hasCopyableValue(prop) || !getGeneratedChoiceTypes(prop).isEmpty();
+
+            if (prop.extendsJavaArray() && (isComplexOgcProperty(prop) || hasName(prop)))
+                hasPropertyLists = true;
+            else if (!prop.extendsJavaArray() && isComplexOgcProperty(prop))
+                hasPropertyFields = true;
+
+            if (isComplexOgcProperty(prop) || hasName(prop))
+            {
+                if (!isBean)
+                    continue;
+
+                if (prop.extendsJavaArray())
+                {
+                    emit("for (int i = 0; i < " + safeVarName + ".size(); i++)");
+                    startBlock();
+                    emit("if (" + safeVarName + ".getProperty(i).hasValue())");
+                    indent();
+                    printFreezeValue(prop, safeVarName + ".getProperty(i).getValue()");
+                    outdent();
+                    endBlock();
+                }
+                else
+                {
+                    emit("if (" + safeVarName + " != null && " + safeVarName + ".hasValue())");
+                    indent();
+                    printFreezeValue(prop, safeVarName + ".getValue()");
+                    outdent();
+                }
+            }
+            else if (prop.extendsJavaArray())
+            {
+                if (isBean)
+                {
+                    String listType = javaListTypeForProperty(prop, true);
+                    String itemType = listType.substring(listType.indexOf('<')+1, listType.length()-1);
+                    emit("for (" + itemType + " item: " + safeVarName + ")");
+                    indent();
+                    printFreezeValue(prop, "item");
+                    outdent();
+                }
+                emit(safeVarName + " = freezeList(" + safeVarName + ");");
+                hasLists = true;
+            }
+            else if (isBean)
+            {
+                emit("if (" + safeVarName + " != null)");
+                indent();
+                printFreezeValue(prop, safeVarName);
+                outdent();
+            }
+        }
+        endBlock();
+
+        if (hasLists)
+            printFreezeList();
+        if (hasPropertyFields || hasPropertyLists)
+            printFrozenProperty();
+        if (hasPropertyLists)
+            printFrozenPropertyList();
+    }
+
+
+    /**
+     * Prints a statement freezing the given value, dispatching on its runtime
+     * type if the declared type of the property is not generated
+     */
+    void printFreezeValue(SchemaProperty prop, String valueExpr) throws IOException
+    {
+        List<String> choiceTypes = getGeneratedChoiceTypes(prop);
+        if (choiceTypes.isEmpty())
+        {
+            emit(valueExpr + ".freeze();");
+            return;
+        }
+
+        // other values are not generated objects and are left as is
+        String keyword = "if";
+        for (String choiceType: choiceTypes)
+        {
+            emit(keyword + " (" + valueExpr + " instanceof " + choiceType + ")");
+            indent();
+            emit("((" + choiceType + ")" + valueExpr + ").freeze();");
+            outdent();
+            keyword = "else if";
+        }
+    }
+
+
+    void printFrozenProperty() throws IOException
+    {
+        addUsedJavaType(OGC_PROP_PACKAGE_NAME + OGC_PROP_IFACE_NAME);
+
+        printJavaDoc("Copies a property of a frozen object, so that changes made to the copy don't affect the object",
+                     new String[] {"prop property to copy, or null"},
+                     "detached property, holding the same frozen value",
+                     false);
+        emit("private static <T> OgcProperty<T> frozenProperty(OgcProperty<T> prop)");
+        startBlock();
+        emit("OgcProperty<T> copy = new " + OGC_PROP_CLASS_NAME + "<T>();");
+        emit("if (prop != null)");
+        startBlock();
+        emit("copy.setName(prop.getName());");
+        emit("copy.setHref(prop.getHref());");
+        emit("copy.setRole(prop.getRole());");
+        emit("copy.setArcRole(prop.getArcRole());");
+        emit("copy.setTitle(prop.getTitle());");
+        emit("if (prop.hasValue())");
+        indent();
+        emit("copy.setValue(prop.getValue());");
+        outdent();
+        endBlock();
+        emit("return copy;");
+        endBlock();
+    }
+
+
+    void printFrozenPropertyList() throws IOException
+    {
+        addUsedJavaType(OGC_LIST_TYPE);
+
+        printJavaDoc("Copies a property list of a frozen object, so that changes made to the copy don't affect the object",
+                     new String[] {"list property list to copy"},
+                     "detached property list, holding the same frozen values",
+                     false);
+        emit("private static <T> OgcPropertyList<T> frozenPropertyList(OgcPropertyList<T> list)");
+        startBlock();
+        emit("OgcPropertyList<T> copy = new OgcPropertyList<T>();");
+        emit("for (int i = 0; i < list.size(); i++)");
+        indent();
+        emit("copy.add(frozenProperty(list.getProperty(i)));");
+        outdent();
+        emit("return copy;");
+        endBlock();
+    }
+
+
+    /**
+     * Prints code returning the given expression instead of a modifiable
+     * field if the object is frozen
+     */
+    void printReturnIfFrozen(String returnExpr) throws IOException
+    {
+        if (!GENERATE_FREEZE)
+            return;
+
+        emit("if (frozen)");
+        indent();
+        emit("return " + returnExpr + ";");
+        outdent();
+    }
+
+
+    void printFreezeList() throws IOException
+    {
+        addUsedJavaType(Arrays.class.getCanonicalName());
+        addUsedJavaType(Collections.class.getCanonicalName());
+
+        printJavaDoc("Copies items to an unmodifiable list backed by an array of the exact size",
+                     new String[] {"list list to copy"},
+                     "read-only list",
+                     false);
+        emit("@SuppressWarnings(\"unchecked\")");
+        emit("private static <T> List<T> freezeList(List<T> list)");
+        startBlock();
+        emit("switch (list.size())");
+        startBlock();
+        emit("case 0:");
+        indent();
+        emit("return Collections.emptyList();");
+        outdent();
+        emit("case 1:");
+        indent();
+        emit("return Collections.singletonList(list.get(0));");
+        outdent();
+        emit("default:");
+        indent();
+        emit("return Collections.unmodifiableList(Arrays.asList((T[])list.toArray()));");
+        outdent();
+        endBlock();
+        endBlock();
+    }
+
+
+    void printCheckNotFrozen() throws IOException
+    {
+        if (GENERATE_FREEZE)
+            emit("checkNotFrozen();");
+    }
+
+    
     void printNestedTypeImpls(SchemaType sType, SchemaTypeSystem system) throws IOException
     {
         SchemaType[] anonTypes = sType.getAnonymousTypes();
@@ -14,7 +14,6 @@ import javax.xml.namespace.QName;
 import org.apache.xmlbeans.SchemaGlobalElement;
 import org.apache.xmlbeans.SchemaProperty;
 import org.apache.xmlbeans.SchemaType;
-import org.apache.xmlbeans.impl.common.NameUtil;
 import com.google.gson.stream.JsonWriter;
 
 
@@ -24,6 +23,7 @@ import com.google.gson.stream.JsonWriter;
 public final class SchemaTypeJsonSchemaPrinter extends AbstractCodePrinter
 {
     static final String DEF_REF_PREFIX = "#/definitions/";
+    public final static String SCHEMA_DIR = "json";
     String INDENT = "  ";
     CharArrayWriter _charBuffer = new CharArrayWriter(1024);
     String _packageName;
@@ -524,23 +524,6 @@ public final class SchemaTypeJsonSchemaPrinter extends AbstractCodePrinter
     }
     
     
-    String jsonNameForProperty(SchemaProperty prop)
-    {
-        String propName = NameUtil.lowerCamelCase(prop.getJavaPropertyName());
-        
-        // handle plural names
-        if (prop.extendsJavaArray() && !propName.equals("quality"))
-        {
-            if (propName.endsWith("y"))
-                propName = propName.substring(0, propName.length()-1) + "ies";
-            else if (!propName.endsWith("s"))
-                propName += "s";
-        }
-        
-        return propName;
-    }
-    
-    
     void printPropertyDefSimpleType(SchemaType sType) throws IOException
     {
         
@@ -571,4 +554,13 @@ public final class SchemaTypeJsonSchemaPrinter extends AbstractCodePrinter
     {
         return packageName + ".json";
     }
+
+    
+    /**
+     * @return path of the schema file relative to the binary output directory
+     */
+    public static String getSchemaFilePath(String packageName)
+    {
+        return SCHEMA_DIR + "/" + getSchemaFileName(packageName);
+    }
 }
@@ -0,0 +1,382 @@
+package com.sensia.xmlbeans;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.xmlbeans.SchemaProperty;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.impl.common.NameUtil;
+
+
+/**
+ * Prints the protocol buffers (proto3) schema of a package.<br/>
+ * Each complex type is mapped to a message with the fields of its base
+ * types first, substitution groups and choices to messages with a single
+ * oneof and complex OGC properties to wrapper messages holding either the
+ * href or the value.<br/>
+ * Messages are buffered until {@link #endClassAndClose(Writer)} is called,
+ * so that the file is only created once imports of all packages are known.
+ */
+public final class SchemaTypeProtobufSchemaPrinter extends AbstractProtobufPrinter
+{
+    public final static String SCHEMA_DIR = "proto";
+
+    CharArrayWriter _charBuffer = new CharArrayWriter(1024);
+    String _packageName;
+    Set<String> importedPackages = new TreeSet<String>();
+    Set<String> printedMessages = new HashSet<String>();
+    List<SchemaType> pendingTypes = new ArrayList<SchemaType>();
+    Map<String, SchemaProperty> pendingChoices = new LinkedHashMap<String, SchemaProperty>();
+    Map<String, String> pendingWrappers = new LinkedHashMap<String, String>();
+    Set<String> pendingArrays = new LinkedHashSet<String>();
+
+
+    public SchemaTypeProtobufSchemaPrinter()
+    {
+        _indent = 0;
+        _writer = _charBuffer;
+    }
+
+
+    public void startClass(String packageName) throws IOException
+    {
+        _packageName = packageName;
+    }
+
+
+    /**
+     * @return names of the packages whose schemas are imported by this schema
+     */
+    public Set<String> getImportedPackages()
+    {
+        return importedPackages;
+    }
+
+
+    public void endClassAndClose(Writer fileWriter) throws IOException
+    {
+        // write header and imports
+        _writer = fileWriter;
+        emit("// Protocol buffers schema of package " + _packageName);
+        emit("// Fields added by each level of a type hierarchy are numbered from level*" + FIELD_RANGE_SIZE + "+1,");
+        emit("// in the order of properties in the XML schema");
+        emit("syntax = \"proto3\";");
+        emit("");
+        emit("package " + _packageName + ";");
+
+        if (!importedPackages.isEmpty())
+            emit("");
+        for (String packageName: importedPackages)
+            emit("import \"" + getSchemaFileName(packageName) + "\";");
+
+        emit("");
+        emit("option java_package = \"" + _packageName + ".proto\";");
+        emit("option java_multiple_files = true;");
+
+        _charBuffer.writeTo(fileWriter);
+        fileWriter.close();
+    }
+
+
+    public void printMessages(SchemaType sType) throws IOException
+    {
+        if (sType.isDocumentType())
+        {
+            SchemaType contentType = sType.getContentModel().getType();
+            if (contentType == null)
+                return;
+
+            List<SchemaType> members = getSubstitutionMembers(sType);
+            if (!members.isEmpty())
+                printSubstitutionGroupMessage(sType, members);
+
+            // also print message for element anonymous type
+            String eltNs = getJavaPackage(sType, false);
+            String typeNs = getJavaPackage(contentType, false);
+            if (contentType.isAnonymousType() && !contentType.isSimpleType() && eltNs.equals(typeNs))
+                printTypeMessage(contentType);
+        }
+        else if (!sType.isSimpleType())
+            printTypeMessage(sType);
+
+        printPendingMessages();
+    }
+
+
+    void printTypeMessage(SchemaType sType) throws IOException
+    {
+        if (!MySchemaTypeSystemCompiler.isGenerated(sType))
+            return;
+
+        String msgName = getMessageName(sType);
+        if (!printedMessages.add(msgName))
+            return;
+
+        // collect base types, starting from the root
+        List<SchemaType> typeHierarchy = new ArrayList<SchemaType>();
+        for (SchemaType t = sType; t != null; t = getProtoBaseType(t))
+            typeHierarchy.add(0, t);
+
+        emit("");
+        emit("message " + msgName);
+        startBlock();
+
+        Set<String> fieldNames = new HashSet<String>();
+        for (SchemaType t: typeHierarchy)
+        {
+            int fieldNum = getFirstFieldNumber(t);
+            if (hasValueField(t))
+            {
+                emit("// text value");
+                emit(getScalarTypeRef(javaTypeForSchemaType(getTextValueType(t)), false) + " value = " + VALUE_FIELD_NUM + ";");
+                fieldNames.add("value");
+            }
+
+            List<SchemaProperty> props = getProtoProperties(t);
+            if (!props.isEmpty())
+                emit("// " + getSchemaComponentLocalName(t));
+
+            for (SchemaProperty sProp: props)
+            {
+                String fieldName = jsonNameForProperty(sProp);
+                if (!fieldNames.add(fieldName))
+                    fieldName += fieldNum;
+                printField(sProp, fieldName, fieldNum++);
+            }
+        }
+
+        endBlock();
+    }
+
+
+    void printField(SchemaProperty sProp, String fieldName, int fieldNum) throws IOException
+    {
+        String fieldType = getFieldType(sProp);
+        if (fieldType == null)
+        {
+            // keep number so that following fields don't change
+            emit("reserved " + fieldNum + "; // " + fieldName + ", unsupported type");
+            return;
+        }
+
+        String label = isList(sProp) && !fieldType.startsWith("repeated ") ? "repeated " : "";
+        emit(label + fieldType + " " + fieldName + " = " + fieldNum + ";");
+    }
+
+
+    /**
+     * @return the type of a message field, or null if not supported
+     */
+    String getFieldType(SchemaProperty sProp)
+    {
+        if (!isSupportedProperty(sProp))
+            return null;
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+            return getScalarTypeRef(javaTypeForProperty(sProp), isList(sProp));
+
+        String valueRef;
+        if (isChoice(sProp))
+        {
+            valueRef = getChoiceMessageName(sProp);
+            pendingChoices.put(valueRef, sProp);
+        }
+        else
+        {
+            valueRef = getValueTypeRef(getValueType(sProp));
+        }
+
+        if (isComplexOgcProperty(sProp))
+        {
+            // qualify name with package of value type so that wrappers of same named
+            // messages from different packages don't collide
+            String qualifiedRef = valueRef.startsWith(".") ? valueRef.substring(1) : valueRef;
+            String wrapperName = NameUtil.upperCamelCase(qualifiedRef) + PROPERTY_SUFFIX;
+            pendingWrappers.put(wrapperName, valueRef);
+            return wrapperName;
+        }
+
+        return valueRef;
+    }
+
+
+    /**
+     * @return the type of a scalar field, using a wrapper message for arrays
+     * nested in list items, oneofs or property wrappers
+     */
+    String getScalarTypeRef(String javaType, boolean nested)
+    {
+        if (javaType.endsWith("[]"))
+        {
+            String protoType = getProtoScalarType(javaType.substring(0, javaType.length()-2));
+            if (!nested)
+                return "repeated " + protoType;
+
+            String arrayMsgName = getArrayMessageName(protoType);
+            pendingArrays.add(protoType);
+            return arrayMsgName;
+        }
+
+        return getProtoScalarType(javaType);
+    }
+
+
+    /**
+     * @return the type used to refer to the value of an element or type,
+     * qualified with its package if it is defined in another file
+     */
+    String getValueTypeRef(SchemaType valueType)
+    {
+        if (isScalarValue(valueType))
+            return getScalarTypeRef(javaTypeForSchemaType(getContentType(valueType)), true);
+
+        SchemaType declaringType = valueType;
+        if (valueType.isDocumentType() && getSubstitutionMembers(valueType).isEmpty())
+            declaringType = valueType.getContentModel().getType();
+
+        String msgName = getMessageName(valueType);
+        String packageName = getJavaPackage(declaringType, false);
+        if (packageName.equals(_packageName))
+        {
+            if (declaringType.isAnonymousType() && !valueType.isDocumentType())
+                pendingTypes.add(declaringType);
+            return msgName;
+        }
+
+        importedPackages.add(packageName);
+        return "." + packageName + "." + msgName;
+    }
+
+
+    void printSubstitutionGroupMessage(SchemaType eltType, List<SchemaType> members) throws IOException
+    {
+        String msgName = getMessageName(eltType);
+        if (!printedMessages.add(msgName))
+            return;
+
+        emit("");
+        emit("message " + msgName);
+        startBlock();
+        emit("oneof value");
+        startBlock();
+        int fieldNum = 1;
+        for (SchemaType member: members)
+            emit(getValueTypeRef(member) + " " + getChoiceFieldName(member) + " = " + (fieldNum++) + ";");
+        endBlock();
+        endBlock();
+    }
+
+
+    void printChoiceMessage(String msgName, SchemaProperty sProp) throws IOException
+    {
+        if (!printedMessages.add(msgName))
+            return;
+
+        emit("");
+        emit("message " + msgName);
+        startBlock();
+        emit("oneof value");
+        startBlock();
+        int fieldNum = 1;
+        for (SchemaProperty item: sProp.getType().getElementProperties())
+        {
+            SchemaType valueType = getChoiceItemValueType(item);
+            if (isSupportedValue(valueType))
+            {
+                String fieldName = NameUtil.lowerCamelCase(item.getName().getLocalPart());
+                emit(getValueTypeRef(valueType) + " " + fieldName + " = " + fieldNum + ";");
+            }
+            fieldNum++;
+        }
+        endBlock();
+        endBlock();
+    }
+
+
+    void printPropertyMessage(String msgName, String valueRef) throws IOException
+    {
+        if (!printedMessages.add(msgName))
+            return;
+
+        emit("");
+        emit("message " + msgName);
+        startBlock();
+        emit("string name = 1;");
+        emit("oneof target");
+        startBlock();
+        emit("string href = 2;");
+        emit(valueRef + " value = 3;");
+        endBlock();
+        endBlock();
+    }
+
+
+    void printArrayMessage(String protoType) throws IOException
+    {
+        String msgName = getArrayMessageName(protoType);
+        if (!printedMessages.add(msgName))
+            return;
+
+        emit("");
+        emit("message " + msgName);
+        startBlock();
+        emit("repeated " + protoType + " values = 1;");
+        endBlock();
+    }
+
+
+    /**
+     * Prints messages referenced by the last printed messages, until none is left
+     */
+    void printPendingMessages() throws IOException
+    {
+        while (!pendingTypes.isEmpty() || !pendingChoices.isEmpty() ||
+               !pendingWrappers.isEmpty() || !pendingArrays.isEmpty())
+        {
+            List<SchemaType> types = new ArrayList<SchemaType>(pendingTypes);
+            pendingTypes.clear();
+            for (SchemaType sType: types)
+                printTypeMessage(sType);
+
+            Map<String, SchemaProperty> choices = new LinkedHashMap<String, SchemaProperty>(pendingChoices);
+            pendingChoices.clear();
+            for (Entry<String, SchemaProperty> choice: choices.entrySet())
+                printChoiceMessage(choice.getKey(), choice.getValue());
+
+            Map<String, String> wrappers = new LinkedHashMap<String, String>(pendingWrappers);
+            pendingWrappers.clear();
+            for (Entry<String, String> wrapper: wrappers.entrySet())
+                printPropertyMessage(wrapper.getKey(), wrapper.getValue());
+
+            List<String> arrays = new ArrayList<String>(pendingArrays);
+            pendingArrays.clear();
+            for (String protoType: arrays)
+                printArrayMessage(protoType);
+        }
+    }
+
+
+    public static String getSchemaFileName(String packageName)
+    {
+        return packageName + ".proto";
+    }
+
+
+    /**
+     * @return path of the schema file relative to the binary output directory,
+     * whose {@value #SCHEMA_DIR} subfolder is the import path of all schemas
+     */
+    public static String getSchemaFilePath(String packageName)
+    {
+        return SCHEMA_DIR + "/" + getSchemaFileName(packageName);
+    }
+}
@@ -0,0 +1,1607 @@
+package com.sensia.xmlbeans;
+
+import java.io.CharArrayWriter;
+import java.io.Writer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import javax.xml.namespace.QName;
+import org.apache.xmlbeans.impl.common.NameUtil;
+import org.apache.xmlbeans.impl.schema.SchemaTypeImpl;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.SchemaProperty;
+
+
+/**
+ * Prints the java code for reading and writing schema types from and to
+ * CBOR (RFC 7049).<br/>
+ * Objects are encoded with the same property names and 'type' member as
+ * the JSON schema, with property keys pre-encoded as byte array constants
+ * and numbers written in binary form. Readers build objects through the
+ * package factory, like the XML readers.
+ */
+public final class SchemaTypeReadWriteCborPrinter extends AbstractCodePrinter
+{
+    public final static String BINDING_CLASS_NAME = "CborStreamBindings";
+    public final static String BINDING_SUBPACKAGE_NAME = "bind";
+
+    CharArrayWriter _charBuffer = new CharArrayWriter(1024);
+    Writer _fileWriter;
+    String _packageName;
+    List<SchemaType> processedTypes = new ArrayList<SchemaType>();
+    Map<String, String> bindingClasses = new LinkedHashMap<String, String>();
+    Map<String, String> encodedStrings = new TreeMap<String, String>();
+    List<SchemaProperty> pendingChoices = new ArrayList<SchemaProperty>();
+
+
+    public SchemaTypeReadWriteCborPrinter(Writer fileWriter)
+    {
+        _indent = 0;
+        _fileWriter = fileWriter;
+        _writer = _charBuffer;
+    }
+
+
+    public void endClassAndClose() throws IOException
+    {
+        outdent();
+
+        // write package and imports
+        _writer = _fileWriter;
+        emit("package " + _packageName + "." + BINDING_SUBPACKAGE_NAME + ";");
+
+        emit("");
+        emit("import java.io.EOFException;");
+        emit("import java.io.IOException;");
+        emit("import java.io.InputStream;");
+        emit("import java.io.OutputStream;");
+        emit("import java.nio.charset.StandardCharsets;");
+        if (!textWriteTypes.isEmpty() || !textReadTypes.isEmpty())
+            emit("import net.opengis.AbstractXMLStreamBindings;");
+
+        Collections.sort(usedJavaTypes);
+        for (String javaType: usedJavaTypes)
+        {
+            // skip primitive types
+            if (javaType.indexOf('.') < 0)
+                continue;
+
+            // skip array types
+            if (javaType.contains("[]"))
+                continue;
+
+            // skip java.lang types
+            if (javaType.startsWith("java.lang"))
+                continue;
+
+            emit("import " + javaType + ";");
+
+            if (javaType.endsWith("." + OGC_PROP_IFACE_NAME))
+                emit("import " + OGC_PROP_PACKAGE_NAME + OGC_PROP_CLASS_NAME + ";");
+        }
+        emit("import " + _packageName + ".Factory;");
+
+        emit("");
+        emit("");
+        emit("/**");
+        emit(" * CBOR bindings for package " + _packageName + ".<br/>");
+        emit(" * Objects are encoded as indefinite length maps using the property names of");
+        emit(" * the JSON schema. Readers only accept such maps, with the name and href members");
+        emit(" * first, followed by the type member. Wrap streams in buffered streams for best");
+        emit(" * performance. Instances keep scratch buffers, so they must not be shared between threads.");
+        emit(" */");
+        emit("public class " + BINDING_CLASS_NAME);
+        startBlock();
+        printEncodedStrings();
+        printDependencyBindingsVars();
+
+        // print factory var
+        emit("Factory factory;");
+
+        // constructor
+        printConstructor(BINDING_CLASS_NAME);
+
+        // CBOR encoding and decoding helpers
+        printCborWriterMethods();
+        printCborReaderMethods();
+
+        // dates and other runtime types written as text
+        printTextValuesClass();
+
+        _charBuffer.writeTo(_fileWriter);
+        endBlock();
+
+        _fileWriter.close();
+    }
+
+
+    public void startClass(String packageName) throws IOException
+    {
+        _packageName = packageName;
+        indent();
+        addUsedJavaType(OGC_PROP_PACKAGE_NAME + OGC_PROP_IFACE_NAME);
+        
+        // keys used by generic helper methods
+        getEncodedStringConstant("KEY_", "name");
+        getEncodedStringConstant("KEY_", "href");
+    }
+
+
+    void printEncodedStrings() throws IOException
+    {
+        for (Entry<String, String> entry: encodedStrings.entrySet())
+            emit("static final byte[] " + entry.getKey() + " = " + entry.getValue() + ";");
+    }
+
+
+    void printDependencyBindingsVars() throws IOException
+    {
+        if (bindingClasses.size() > 0)
+            emit("");
+
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+            emit(dep.getKey() + " " + dep.getValue() + ";");
+    }
+
+
+    String getBindingsVarName(SchemaType sType)
+    {
+        if (sType.getShortJavaName().equals("Object") || sType.getFullJavaName().startsWith(_packageName))
+            return "this";
+
+        String packageName = getJavaPackage(sType, false);
+        String bindingClass = getBindingsFullClassName(packageName);
+        String varName = bindingClasses.get(bindingClass);
+
+        if (varName == null)
+        {
+            varName = "ns" + (bindingClasses.size()+1) + "Bindings";
+            bindingClasses.put(bindingClass, varName);
+        }
+
+        return varName;
+    }
+
+
+    @Override
+    void printConstructor(String className) throws IOException
+    {
+        emit("");
+        emit("");
+
+        // generate factory arguments
+        int i = 1;
+        String factoryArgs = "";
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+        {
+            factoryArgs += ", " + dep.getKey().replace(BINDING_SUBPACKAGE_NAME + "." + BINDING_CLASS_NAME, "Factory");
+            factoryArgs += " ns" + i + "Factory";
+            i++;
+        }
+
+        emit("public " + className + "(Factory factory" + factoryArgs + ")");
+        startBlock();
+        emit("this.factory = factory;");
+        i = 1;
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+            emit(dep.getValue() + " = new " + dep.getKey() + "(ns" + i++ + "Factory);");
+        endBlock();
+    }
+
+
+    /**
+     * Registers a string constant and returns the name of the constant
+     * holding its CBOR encoding (text string header followed by UTF-8 bytes)
+     */
+    String getEncodedStringConstant(String prefix, String value)
+    {
+        String constName = prefix + value;
+        if (!encodedStrings.containsKey(constName))
+        {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            StringBuilder buf = new StringBuilder("new byte[] {");
+
+            int len = utf8.length;
+            if (len < 24)
+                appendByte(buf, 0x60 | len);
+            else if (len < 0x100)
+            {
+                appendByte(buf, 0x78);
+                appendByte(buf, len);
+            }
+            else
+            {
+                appendByte(buf, 0x79);
+                appendByte(buf, len >> 8);
+                appendByte(buf, len);
+            }
+
+            for (byte b: utf8)
+                appendByte(buf, b);
+
+            buf.setLength(buf.length()-2);
+            buf.append('}');
+            encodedStrings.put(constName, buf.toString());
+        }
+
+        return constName;
+    }
+
+
+    void appendByte(StringBuilder buf, int b)
+    {
+        b &= 0xFF;
+        if (b > 0x7F)
+            buf.append("(byte)");
+        buf.append(String.format("0x%02X", b)).append(", ");
+    }
+
+
+    public void printReadWriteMethods(SchemaType sType) throws IOException
+    {
+        if (sType.isDocumentType())
+            printReadWriteElementMethods(sType);
+        else
+            printReadWriteTypeMethods(sType);
+    }
+
+
+    void printReadWriteElementMethods(SchemaType eltType) throws IOException
+    {
+        SchemaType contentType = eltType.getContentModel().getType();
+        if (contentType == null)
+            return;
+
+        addUsedJavaType(contentType.getFullJavaName());
+
+        // also print write methods for this element complex type if in same package
+        // this will only be done if complex type hasn't been processed yet
+        String eltNs = getJavaPackage(eltType, false);
+        String typeNs = getJavaPackage(contentType, false);
+        if (contentType.isAnonymousType() && !contentType.isSimpleType() && eltNs.equals(typeNs))
+            printReadWriteTypeMethods(contentType);
+
+        // print read/write element method
+        if (eltType.isAbstract() || contentType.isAbstract())
+        {
+            printReadMethodAbstract(eltType, contentType);
+            printWriteMethodAbstract(eltType, contentType);
+        }
+        else
+        {
+            printReadMethodConcrete(eltType, contentType);
+            printWriteMethodConcrete(eltType, contentType);
+        }
+    }
+
+
+    void printReadWriteTypeMethods(SchemaType contentType) throws IOException
+    {
+        // no need for read/write methods for string enums
+        if (contentType.hasStringEnumValues())
+            return;
+
+        addUsedJavaType(contentType.getFullJavaName());
+
+        if (contentType.isAnonymousType())
+        {
+            printReadObjectMethod(contentType);
+            printReadPropertiesMethod(contentType);
+            printWritePropertiesMethod(contentType);
+        }
+        else if (!processedTypes.contains(contentType))
+        {
+            if (!contentType.isAbstract())
+            {
+                printReadTypeMethod(contentType);
+                printReadObjectMethod(contentType);
+                printWriteTypeMethod(contentType);
+            }
+            printReadPropertiesMethod(contentType);
+            printWritePropertiesMethod(contentType);
+            processedTypes.add(contentType);
+        }
+    }
+
+
+    /*********************************************/
+    /**         Read methods generation         **/
+    /*********************************************/
+
+    void printReadShortMethod(String methodName, String javaTypeName) throws IOException
+    {
+        emit("public " + javaTypeName + " " + methodName + "(InputStream in) throws IOException");
+        startBlock();
+        emit("return " + methodName + "(in, null);");
+        endBlock();
+        emit("");
+        emit("");
+    }
+
+
+    void printReadMethodAbstract(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Dispatcher method for reading classes derived from " + eltName);
+        printReadShortMethod("read" + eltName, javaTypeName);
+        emit("public " + javaTypeName + " read" + eltName + "(InputStream in, OgcProperty<?> prop) throws IOException");
+
+        startBlock();
+        Map<String, SchemaType> concreteTypes = new LinkedHashMap<String, SchemaType>();
+        collectConcreteTypes(eltType, concreteTypes);
+        printReadDispatcher(concreteTypes);
+        endBlock();
+    }
+
+
+    void printReadMethodConcrete(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+        if (contentType.isSimpleType())
+            javaTypeName = javaTypeForSchemaType(contentType);
+
+        printJavaDoc("Read method for " + eltName + " element");
+        printReadShortMethod("read" + eltName, javaTypeName);
+        emit("public " + javaTypeName + " read" + eltName + "(InputStream in, OgcProperty<?> prop) throws IOException");
+
+        startBlock();
+        if (contentType.isSimpleType())
+        {
+            // read inline value
+            String valCall = printReadValue(contentType, javaTypeName, "val");
+            emit("return " + valCall + ";");
+        }
+        else if (contentType.isAnonymousType())
+        {
+            printReadObjectHeader();
+            emit("return read" + getSchemaComponentLocalName(contentType) + "Object(in, key);");
+        }
+        else
+        {
+            String bindingsInstance = getBindingsVarName(contentType);
+            String readMethod = bindingsInstance + ".read" + getSchemaComponentLocalName(contentType);
+            emit("return " + readMethod + "(in, prop);");
+        }
+        endBlock();
+    }
+
+
+    void printReadTypeMethod(SchemaType sType) throws IOException
+    {
+        String javaTypeName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Read method for " + complexTypeName + " complex type");
+        printReadShortMethod("read" + complexTypeName, javaTypeName);
+        emit("public " + javaTypeName + " read" + complexTypeName + "(InputStream in, OgcProperty<?> prop) throws IOException");
+
+        startBlock();
+        printReadObjectHeader();
+        emit("return read" + complexTypeName + "Object(in, key);");
+        endBlock();
+    }
+
+
+    /**
+     * Prints code reading the start of an object map, setting the name and
+     * href of the enclosing property, if any
+     */
+    void printReadObjectHeader() throws IOException
+    {
+        emit("String key = readObjectHeader(in, prop);");
+        emit("if (key == null)");
+        indent();
+        emit("return null;");
+        outdent();
+        emit("");
+    }
+
+
+    /**
+     * Prints code selecting the read method according to the type member
+     * of an object map
+     */
+    void printReadDispatcher(Map<String, SchemaType> concreteTypes) throws IOException
+    {
+        printReadObjectHeader();
+        emit("String type = readTypeName(in, key);");
+
+        boolean first = true;
+        for (Entry<String, SchemaType> entry: concreteTypes.entrySet())
+        {
+            SchemaType sType = entry.getValue();
+            String bindingsInstance = getBindingsVarName(sType);
+            String readMethod = bindingsInstance + ".read" + getSchemaComponentLocalName(sType) + "Object";
+
+            emit((first ? "" : "else ") + "if (type.equals(\"" + entry.getKey() + "\"))");
+            indent();
+            emit("return " + readMethod + "(in, readNextKey(in));");
+            outdent();
+
+            first = false;
+        }
+
+        emit("");
+        emit("throw new IOException(\"Unsupported type: \" + type);");
+    }
+
+
+    /**
+     * Collects the concrete complex types whose objects can be read in place
+     * of the given element or type, keyed by the value of their type member
+     */
+    void collectConcreteTypes(SchemaType valueType, Map<String, SchemaType> concreteTypes)
+    {
+        if (valueType.isDocumentType())
+        {
+            SchemaType contentType = valueType.getContentModel().getType();
+            if (contentType == null)
+                return;
+
+            if (valueType.isAbstract() || contentType.isAbstract())
+            {
+                for (QName subQname: ((SchemaTypeImpl)valueType).getSubstitutionGroupMembers())
+                {
+                    SchemaType elt = valueType.getTypeSystem().findDocumentType(subQname);
+                    if (elt != null && !elt.isAbstract())
+                        collectConcreteTypes(elt, concreteTypes);
+                }
+            }
+            else
+                collectConcreteTypes(contentType, concreteTypes);
+        }
+        else if (!valueType.isSimpleType() && !valueType.isAbstract() && !valueType.hasStringEnumValues())
+        {
+            if (!concreteTypes.containsKey(valueType.getShortJavaName()))
+                concreteTypes.put(valueType.getShortJavaName(), valueType);
+        }
+    }
+
+
+    /**
+     * Prints the method creating an object and reading its members, once
+     * its header has been read
+     */
+    void printReadObjectMethod(SchemaType sType) throws IOException
+    {
+        String javaTypeName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+        boolean hasValue = !hasElements(sType) && hasTextValue(sType) && !sType.isSimpleType();
+
+        printJavaDoc("Reads members of a " + complexTypeName + " object, starting with the given key");
+        emit("public " + javaTypeName + " read" + complexTypeName + "Object(InputStream in, String key) throws IOException");
+
+        startBlock();
+        emit(javaTypeName + " bean = " + getNewBeanCall(sType) + ";");
+        emit("for (; key != null; key = readNextKey(in))");
+        startBlock();
+
+        String prefix = "";
+        if (hasValue)
+        {
+            SchemaType textValueType = sType;
+            while (!textValueType.isSimpleType())
+                textValueType = textValueType.getBaseType();
+
+            emit("if (key.equals(\"value\"))");
+            startBlock();
+            String valCall = printReadValue(textValueType, javaTypeForSchemaType(textValueType), "val");
+            emit("bean.setValue(" + valCall + ");");
+            endBlock();
+            prefix = "else ";
+        }
+
+        if (hasProperties(sType))
+        {
+            String bindingsInstance = getBindingsVarName(sType);
+            emit(prefix + "if (!" + bindingsInstance + ".read" + complexTypeName + "Property(in, key, bean))");
+            indent();
+            emit("skipItem(in);");
+            outdent();
+        }
+        else if (hasValue)
+        {
+            emit("else");
+            indent();
+            emit("skipItem(in);");
+            outdent();
+        }
+        else
+            emit("skipItem(in);");
+
+        endBlock();
+        emit("");
+        emit("return bean;");
+        endBlock();
+    }
+
+
+    /**
+     * @return expression creating a new object of the given type
+     */
+    String getNewBeanCall(SchemaType sType)
+    {
+        // anonymous types are not created by the factory
+        if (sType.isAnonymousType())
+            return "new " + sType.getFullJavaImplName().replace('$', '.') + "()";
+
+        return "factory.new" + sType.getShortJavaName() + "()";
+    }
+
+
+    void printReadPropertiesMethod(SchemaType sType) throws IOException
+    {
+        if (!hasProperties(sType))
+            return;
+
+        String shortJavaName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Reads a property of " + complexTypeName + " complex type",
+                null, "true if the key was one of its properties, false if the value was not read", false);
+        emit("public boolean read" + complexTypeName + "Property(InputStream in, String key, " + shortJavaName + " bean) throws IOException");
+
+        startBlock();
+
+        boolean first = true;
+        for (SchemaProperty sProp: getDerivedPropertiesWithAttrFirst(sType))
+        {
+            // skip xlink attributes since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(sProp.getName().getLocalPart()))
+                continue;
+
+            emit((first ? "" : "else ") + "if (key.equals(\"" + jsonNameForProperty(sProp) + "\"))");
+            startBlock();
+            if (!sProp.isAttribute() && sProp.extendsJavaArray())
+                printReadPropertyList(sProp);
+            else
+                printReadSingleProperty(sProp);
+            endBlock();
+            first = false;
+        }
+
+        SchemaType baseType = sType.getBaseType();
+        String baseCall = "false";
+        if (baseType != null && !baseType.isURType() && !baseType.isSimpleType() && hasProperties(baseType))
+        {
+            String bindingsInstance = getBindingsVarName(baseType);
+            baseCall = bindingsInstance + ".read" + getSchemaComponentLocalName(baseType) + "Property(in, key, bean)";
+        }
+
+        if (first)
+            emit("return " + baseCall + ";");
+        else
+        {
+            emit("else");
+            indent();
+            emit("return " + baseCall + ";");
+            outdent();
+            emit("");
+            emit("return true;");
+        }
+
+        endBlock();
+
+        // print dispatchers of choice properties
+        while (!pendingChoices.isEmpty())
+            printReadChoiceMethod(pendingChoices.remove(0));
+    }
+
+
+    void printReadSingleProperty(SchemaProperty sProp) throws IOException
+    {
+        String propName = sProp.getJavaPropertyName();
+        String propType = javaTypeForProperty(sProp);
+        addUsedJavaType(javaFullTypeForProperty(sProp));
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            // case of inline value
+            String valCall = printReadValue(sProp.getType(), propType, "val");
+            emit("bean.set" + propName + "(" + valCall + ");");
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            // name and href are read in the property object
+            String varName = sProp.getName().getLocalPart() + "Prop";
+            emit(OGC_PROP_IFACE_NAME + "<" + propType + "> " + varName + " = bean.get" + propName + "Property();");
+            emit(propType + " value = " + getReadObjectValueCall(sProp, varName) + ";");
+            emit("if (value != null)");
+            indent();
+            emit(varName + ".setValue(value);");
+            outdent();
+        }
+        else
+            emit("bean.set" + propName + "(" + getReadObjectValueCall(sProp, "null") + ");");
+    }
+
+
+    void printReadPropertyList(SchemaProperty sProp) throws IOException
+    {
+        String propName = sProp.getJavaPropertyName();
+        String propType = javaTypeForProperty(sProp);
+        addUsedJavaType(javaFullTypeForProperty(sProp));
+
+        emit("int numItems = readArrayHeader(in);");
+        emit("for (int i = 0; i < numItems; i++)");
+        startBlock();
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            // case of inline value
+            String valCall = printReadValue(sProp.getType(), propType, "val");
+            emit("bean.add" + propName + "(" + valCall + ");");
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            // name and href are read in the property object
+            emit(OGC_PROP_IFACE_NAME + "<" + propType + "> item = new " + OGC_PROP_CLASS_NAME + "<" + propType + ">();");
+            emit(propType + " value = " + getReadObjectValueCall(sProp, "item") + ";");
+            emit("if (value != null)");
+            indent();
+            emit("item.setValue(value);");
+            outdent();
+            emit("bean.get" + propName + "List().add(item);");
+        }
+        else
+            emit("bean.add" + propName + "(" + getReadObjectValueCall(sProp, "null") + ");");
+        endBlock();
+    }
+
+
+    /**
+     * @return expression reading an object value, with its name and href
+     * set in the given property variable
+     */
+    String getReadObjectValueCall(SchemaProperty sProp, String propVar)
+    {
+        if (isChoice(sProp))
+        {
+            if (!pendingChoices.contains(sProp))
+                pendingChoices.add(sProp);
+            return getReadChoiceMethodName(sProp) + "(in, " + propVar + ")";
+        }
+
+        String bindingsInstance = getBindingsVarName(getOgcPropertyElementType(sProp));
+        String readMethod = bindingsInstance + ".read" + getPropertyValueTypeLocalName(sProp);
+        return readMethod + "(in, " + propVar + ")";
+    }
+
+
+    String getReadChoiceMethodName(SchemaProperty sProp)
+    {
+        return "read" + getSchemaComponentLocalName(sProp.getContainerType()) + sProp.getJavaPropertyName() + "Choice";
+    }
+
+
+    void printReadChoiceMethod(SchemaProperty sProp) throws IOException
+    {
+        String propType = javaTypeForProperty(sProp);
+
+        printJavaDoc("Dispatcher method for reading the items of choice " + sProp.getName().getLocalPart());
+        emit("protected " + propType + " " + getReadChoiceMethodName(sProp) + "(InputStream in, OgcProperty<?> prop) throws IOException");
+
+        startBlock();
+        Map<String, SchemaType> concreteTypes = new LinkedHashMap<String, SchemaType>();
+        for (SchemaProperty item: sProp.getType().getElementProperties())
+        {
+            SchemaType eltType = item.getContainerType().getTypeSystem().findDocumentType(item.getName());
+            collectConcreteTypes(eltType != null ? eltType : item.getType(), concreteTypes);
+        }
+        printReadDispatcher(concreteTypes);
+        endBlock();
+    }
+
+
+    /**
+     * Prints code reading a simple value in its native CBOR form
+     * @return expression giving the value, possibly a local variable holding it
+     */
+    String printReadValue(SchemaType sType, String javaType, String varName) throws IOException
+    {
+        if (javaType.equals("byte[]"))
+            return "readBytes(in)";
+        else if (javaType.endsWith("[]"))
+        {
+            String itemType = javaType.substring(0, javaType.length()-2);
+            SchemaType itemSchemaType = (sType != null) ? sType.getListItemType() : null;
+            emit(javaType + " " + varName + " = new " + itemType + "[readArrayHeader(in)];");
+            emit("for (int j = 0; j < " + varName + ".length; j++)");
+            indent();
+            emit(varName + "[j] = " + getReadValueCall(itemSchemaType, itemType) + ";");
+            outdent();
+            return varName;
+        }
+        else
+            return getReadValueCall(sType, javaType);
+    }
+
+
+    String getReadValueCall(SchemaType sType, String javaType)
+    {
+        if (javaType.equals("String"))
+            return "readString(in)";
+        else if (javaType.equals("double") || javaType.equals("Double"))
+            return "readDouble(in)";
+        else if (javaType.equals("float") || javaType.equals("Float"))
+            return "readFloat(in)";
+        else if (javaType.equals("boolean") || javaType.equals("Boolean"))
+            return "readBoolean(in)";
+        else if (javaType.equals("long") || javaType.equals("Long"))
+            return "readLong(in)";
+        else if (javaType.equals("int") || javaType.equals("Integer"))
+            return "(int)readLong(in)";
+        else if (javaType.equals("short") || javaType.equals("Short"))
+            return "(short)readLong(in)";
+        else if (javaType.equals("byte") || javaType.equals("Byte"))
+            return "(byte)readLong(in)";
+        else
+            return getTextValueReadCall(sType, javaType, "readString(in)");
+    }
+
+
+    /*********************************************/
+    /**         Write methods generation        **/
+    /*********************************************/
+
+    void printWriteShortMethod(String methodName, String javaTypeName) throws IOException
+    {
+        emit("public void " + methodName + "(OutputStream out, " + javaTypeName + " bean) throws IOException");
+        startBlock();
+        emit(methodName + "(out, bean, null);");
+        endBlock();
+        emit("");
+        emit("");
+    }
+
+
+    void printWriteMethodAbstract(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Dispatcher method for writing classes derived from " + eltName);
+        printWriteShortMethod("write" + eltName, javaTypeName);
+        emit("public void write" + eltName + "(OutputStream out, " + javaTypeName + " bean, String name) throws IOException");
+
+        startBlock();
+
+        // write dispatcher to derived types
+        boolean first = true;
+        for (QName subQname: ((SchemaTypeImpl)eltType).getSubstitutionGroupMembers())
+        {
+            SchemaType elt = eltType.getTypeSystem().findDocumentType(subQname);
+            if (!elt.isAbstract())
+            {
+                String prefix = "";
+                if (!first)
+                    prefix = "else ";
+
+                String javaName = elt.getShortJavaName();
+                if (javaName.endsWith("Element"))
+                    javaName = elt.getContentModel().getType().getShortJavaName();
+                else
+                    addUsedJavaType(elt.getFullJavaName());
+
+                emit(prefix + "if (bean instanceof " + javaName + ")");
+                indent();
+                emit("write" + javaName + "(out, (" + javaName + ")bean, name);");
+                outdent();
+
+                first = false;
+            }
+        }
+
+        if (((SchemaTypeImpl)eltType).getSubstitutionGroupMembers().length > 0)
+        {
+            emit("else");
+            indent();
+            emit("throw new IOException(\"Unsupported type: \" + bean.getClass().getCanonicalName());");
+            outdent();
+        }
+
+        endBlock();
+    }
+
+
+    void printWriteMethodConcrete(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Write method for " + eltName + " element");
+        printWriteShortMethod("write" + eltName, javaTypeName);
+        emit("public void write" + eltName + "(OutputStream out, " + javaTypeName + " bean, String name) throws IOException");
+
+        startBlock();
+        if (contentType.isSimpleType())
+        {
+            // write inline value
+            printWriteValue(javaTypeForSchemaType(contentType), "bean");
+        }
+        else if (contentType.isAnonymousType())
+        {
+            printWriteObject(contentType);
+        }
+        else
+        {
+            String bindingsInstance = getBindingsVarName(contentType);
+            String writeMethod = bindingsInstance + ".write" + getSchemaComponentLocalName(contentType);
+            emit(writeMethod + "(out, bean, name);");
+        }
+        endBlock();
+    }
+
+
+    void printWriteTypeMethod(SchemaType sType) throws IOException
+    {
+        String javaTypeName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Write method for " + complexTypeName + " complex type");
+        emit("public void write" + complexTypeName + "(OutputStream out, " + javaTypeName + " bean, String name) throws IOException");
+
+        startBlock();
+        printWriteObject(sType);
+        endBlock();
+    }
+
+
+    /**
+     * Prints code writing a complete object map, including its name if
+     * provided, its type and all its properties
+     */
+    void printWriteObject(SchemaType sType) throws IOException
+    {
+        emit("startMap(out);");
+        emit("if (name != null)");
+        startBlock();
+        emit("out.write(" + getEncodedStringConstant("KEY_", "name") + ");");
+        emit("writeString(out, name);");
+        endBlock();
+
+        if (!sType.isAbstract())
+        {
+            emit("out.write(" + getEncodedStringConstant("KEY_", "type") + ");");
+            emit("out.write(" + getEncodedStringConstant("TYPE_", sType.getShortJavaName()) + ");");
+        }
+
+        if (hasProperties(sType))
+        {
+            String bindingsInstance = getBindingsVarName(sType);
+            emit(bindingsInstance + ".write" + getSchemaComponentLocalName(sType) + "Properties(out, bean);");
+        }
+
+        // write text value only if no child elements
+        // i.e. mixed content is not suppported
+        if (!hasElements(sType) && hasTextValue(sType) && !sType.isSimpleType())
+        {
+            SchemaType textValueType = sType;
+            while (!textValueType.isSimpleType())
+                textValueType = textValueType.getBaseType();
+
+            emit("out.write(" + getEncodedStringConstant("KEY_", "value") + ");");
+            printWriteValue(javaTypeForSchemaType(textValueType), "bean.getValue()");
+        }
+
+        emit("endMap(out);");
+    }
+
+
+    boolean hasProperties(SchemaType sType)
+    {
+        return hasAttributes(sType) || hasElements(sType);
+    }
+
+
+    void printWritePropertiesMethod(SchemaType sType) throws IOException
+    {
+        if (!hasProperties(sType))
+            return;
+
+        String shortJavaName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Writes properties of " + complexTypeName + " complex type");
+        emit("public void write" + complexTypeName + "Properties(OutputStream out, " + shortJavaName + " bean) throws IOException");
+
+        startBlock();
+
+        SchemaType baseType = sType.getBaseType();
+        if (baseType != null && !baseType.isURType() && !baseType.isSimpleType() && hasProperties(baseType))
+        {
+            String bindingsInstance = getBindingsVarName(baseType);
+            emit(bindingsInstance + ".write" + getSchemaComponentLocalName(baseType) + "Properties(out, bean);");
+        }
+
+        // declare local variables according to types of properties we have
+        for (SchemaProperty sProp: getDerivedProperties(sType))
+        {
+            if (!sProp.isAttribute() && sProp.extendsJavaArray())
+            {
+                emit("int numItems;");
+                break;
+            }
+        }
+
+        for (SchemaProperty sProp: getDerivedPropertiesWithAttrFirst(sType))
+        {
+            // skip xlink attributes since we get them from base type
+            if (isExtendedOgcPropertyType(sType) && XLINK_ATTRS.contains(sProp.getName().getLocalPart()))
+                continue;
+
+            emit("");
+            emit("// " + sProp.getName().getLocalPart());
+            if (!sProp.isAttribute() && sProp.extendsJavaArray())
+                printWritePropertyList(sProp);
+            else if (sProp.extendsJavaOption())
+                printWriteOptionalProperty(sProp);
+            else
+                printWriteSingleProperty(sProp);
+        }
+
+        endBlock();
+    }
+
+
+    void printWriteOptionalProperty(SchemaProperty sProp) throws IOException
+    {
+        String isSetMethod = sProp.getJavaPropertyName();
+        emit("if (bean.isSet" + isSetMethod + "())");
+        startBlock();
+        printWriteSingleProperty(sProp);
+        endBlock();
+    }
+
+
+    void printWriteSingleProperty(SchemaProperty sProp) throws IOException
+    {
+        emit("out.write(" + getEncodedStringConstant("KEY_", jsonNameForProperty(sProp)) + ");");
+        printWritePropertyValue(sProp);
+    }
+
+
+    void printWritePropertyList(SchemaProperty sProp) throws IOException
+    {
+        String propType = javaTypeForProperty(sProp);
+        addUsedJavaType(javaFullTypeForProperty(sProp));
+        String getListCall = printListVariable(sProp);
+        emit("numItems = " + getListCall + ".size();");
+        emit("if (numItems > 0)");
+        startBlock();
+        emit("out.write(" + getEncodedStringConstant("KEY_", jsonNameForProperty(sProp)) + ");");
+        emit("writeHeader(out, MAJOR_ARRAY, numItems);");
+        emit("for (int i = 0; i < numItems; i++)");
+        startBlock();
+        if (isComplexOgcProperty(sProp))
+            emit(OGC_PROP_IFACE_NAME + "<" + propType + "> item = " + getListCall + ".getProperty(i);");
+        else
+            emit(propType + " item = " + getListCall + ".get(i);");
+        printWritePropertyValue(sProp);
+        endBlock();
+        endBlock();
+    }
+
+
+    void printWritePropertyValue(SchemaProperty sProp) throws IOException
+    {
+        String propName = sProp.getJavaPropertyName();
+        boolean isList = !sProp.isAttribute() && sProp.extendsJavaArray();
+
+        String accessCall = "bean.get" + propName + "()";
+        if (isList)
+            accessCall = "item";
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            // case of inline value
+            printWriteValue(javaTypeForProperty(sProp), accessCall);
+            return;
+        }
+
+        if (isComplexOgcProperty(sProp))
+        {
+            String varName = "item";
+            if (!isList)
+            {
+                String typeName = javaTypeForProperty(sProp);
+                varName = sProp.getName().getLocalPart() + "Prop";
+                emit(OGC_PROP_IFACE_NAME + "<" + typeName + "> " + varName + " = bean.get" + propName + "Property();");
+            }
+
+            String nameCall = hasName(sProp) ? varName + ".getName()" : "null";
+            emit("if (" + varName + ".hasValue() && !" + varName + ".hasHref())");
+            startBlock();
+            printWriteObjectValue(sProp, varName + ".getValue()", nameCall);
+            endBlock();
+            emit("else");
+            indent();
+            emit("writeLink(out, " + nameCall + ", " + varName + ".getHref());");
+            outdent();
+        }
+        else
+            printWriteObjectValue(sProp, accessCall, "null");
+    }
+
+
+    void printWriteObjectValue(SchemaProperty sProp, String accessCall, String nameCall) throws IOException
+    {
+        if (isChoice(sProp))
+        {
+            // write dispatcher to possible types
+            boolean first = true;
+            SchemaProperty[] choiceProps = sProp.getType().getElementProperties();
+            for (SchemaProperty item: choiceProps)
+            {
+                String prefix = "";
+                if (!first)
+                    prefix = "else ";
+
+                String choiceType = item.javaBasedOnType().getShortJavaName();
+                String eltLocalName = NameUtil.upperCamelCase(item.getName().getLocalPart());
+                String bindingsInstance = getBindingsVarName(item.javaBasedOnType());
+                String writeMethod = bindingsInstance + ".write" + eltLocalName;
+
+                emit(prefix + "if (" + accessCall + " instanceof " + choiceType + ")");
+                indent();
+                emit(writeMethod + "(out, (" + choiceType + ")" + accessCall + ", " + nameCall + ");");
+                outdent();
+
+                first = false;
+            }
+
+            emit("else");
+            indent();
+            emit("throw new IOException(\"Unsupported type: \" + " + accessCall + ".getClass().getCanonicalName());");
+            outdent();
+        }
+        else
+        {
+            String bindingsInstance = getBindingsVarName(getOgcPropertyElementType(sProp));
+            String writeMethod = bindingsInstance + ".write" + getPropertyValueTypeLocalName(sProp);
+            emit(writeMethod + "(out, " + accessCall + ", " + nameCall + ");");
+        }
+    }
+
+
+    /**
+     * Prints code writing a simple value in its native CBOR form
+     */
+    void printWriteValue(String javaType, String accessCall) throws IOException
+    {
+        if (javaType.equals("byte[]"))
+            emit("writeBytes(out, " + accessCall + ");");
+        else if (javaType.endsWith("[]"))
+        {
+            String itemType = javaType.substring(0, javaType.length()-2);
+            emit("writeHeader(out, MAJOR_ARRAY, " + accessCall + ".length);");
+            emit("for (" + itemType + " v: " + accessCall + ")");
+            indent();
+            printWriteValue(itemType, "v");
+            outdent();
+        }
+        else if (javaType.equals("String"))
+            emit("writeString(out, " + accessCall + ");");
+        else if (javaType.equals("double") || javaType.equals("Double"))
+            emit("writeDouble(out, " + accessCall + ");");
+        else if (javaType.equals("float") || javaType.equals("Float"))
+            emit("writeFloat(out, " + accessCall + ");");
+        else if (javaType.equals("boolean") || javaType.equals("Boolean"))
+            emit("out.write(" + accessCall + " ? SIMPLE_TRUE : SIMPLE_FALSE);");
+        else if (javaType.equals("int") || javaType.equals("Integer") ||
+                 javaType.equals("long") || javaType.equals("Long") ||
+                 javaType.equals("short") || javaType.equals("Short") ||
+                 javaType.equals("byte") || javaType.equals("Byte"))
+            emit("writeLong(out, " + accessCall + ");");
+        else
+            emit("writeString(out, " + getTextValueWriteCall(javaType, accessCall) + ");");
+    }
+
+
+    /**
+     * Prints the low level CBOR encoding methods
+     */
+    void printCborWriterMethods() throws IOException
+    {
+        emit("");
+        emit("");
+        emit("static final int MAJOR_UINT = 0, MAJOR_NINT = 1, MAJOR_BYTES = 2, MAJOR_TEXT = 3, MAJOR_ARRAY = 4, MAJOR_MAP = 5, MAJOR_TAG = 6;");
+        emit("static final int START_MAP = 0xBF, BREAK = 0xFF;");
+        emit("static final int SIMPLE_FALSE = 0xF4, SIMPLE_TRUE = 0xF5;");
+        emit("static final int FLOAT16 = 0xF9, FLOAT32 = 0xFA, FLOAT64 = 0xFB;");
+        emit("");
+        emit("// scratch buffer used to encode headers and numbers");
+        emit("byte[] cborBuffer = new byte[9];");
+
+        printJavaDoc("Writes the header of a data item with the smallest possible length encoding");
+        emit("protected void writeHeader(OutputStream out, int major, long val) throws IOException");
+        startBlock();
+        emit("byte[] buf = cborBuffer;");
+        emit("int mt = major << 5;");
+        emit("int len;");
+        emit("");
+        emit("if (val < 24)");
+        startBlock();
+        emit("buf[0] = (byte)(mt | (int)val);");
+        emit("len = 1;");
+        endBlock();
+        emit("else if (val < 0x100)");
+        startBlock();
+        emit("buf[0] = (byte)(mt | 24);");
+        emit("buf[1] = (byte)val;");
+        emit("len = 2;");
+        endBlock();
+        emit("else if (val < 0x10000)");
+        startBlock();
+        emit("buf[0] = (byte)(mt | 25);");
+        emit("len = putBigEndian(buf, val, 2);");
+        endBlock();
+        emit("else if (val < 0x100000000L)");
+        startBlock();
+        emit("buf[0] = (byte)(mt | 26);");
+        emit("len = putBigEndian(buf, val, 4);");
+        endBlock();
+        emit("else");
+        startBlock();
+        emit("buf[0] = (byte)(mt | 27);");
+        emit("len = putBigEndian(buf, val, 8);");
+        endBlock();
+        emit("");
+        emit("out.write(buf, 0, len);");
+        endBlock();
+
+        emit("");
+        emit("");
+        emit("static int putBigEndian(byte[] buf, long val, int numBytes)");
+        startBlock();
+        emit("for (int i = numBytes; i > 0; i--, val >>>= 8)");
+        indent();
+        emit("buf[i] = (byte)val;");
+        outdent();
+        emit("return numBytes + 1;");
+        endBlock();
+
+        printJavaDoc("Writes an integer value");
+        emit("protected void writeLong(OutputStream out, long val) throws IOException");
+        startBlock();
+        emit("if (val >= 0)");
+        indent();
+        emit("writeHeader(out, MAJOR_UINT, val);");
+        outdent();
+        emit("else");
+        indent();
+        emit("writeHeader(out, MAJOR_NINT, -1 - val);");
+        outdent();
+        endBlock();
+
+        printJavaDoc("Writes a double value, using single precision when it is lossless");
+        emit("protected void writeDouble(OutputStream out, double val) throws IOException");
+        startBlock();
+        emit("if ((float)val == val || Double.isNaN(val))");
+        startBlock();
+        emit("writeFloat(out, (float)val);");
+        emit("return;");
+        endBlock();
+        emit("");
+        emit("cborBuffer[0] = (byte)FLOAT64;");
+        emit("out.write(cborBuffer, 0, putBigEndian(cborBuffer, Double.doubleToLongBits(val), 8));");
+        endBlock();
+
+        printJavaDoc("Writes a float value");
+        emit("protected void writeFloat(OutputStream out, float val) throws IOException");
+        startBlock();
+        emit("cborBuffer[0] = (byte)FLOAT32;");
+        emit("out.write(cborBuffer, 0, putBigEndian(cborBuffer, Float.floatToIntBits(val), 4));");
+        endBlock();
+
+        printJavaDoc("Writes a text string");
+        emit("protected void writeString(OutputStream out, String val) throws IOException");
+        startBlock();
+        emit("byte[] utf8 = val.getBytes(StandardCharsets.UTF_8);");
+        emit("writeHeader(out, MAJOR_TEXT, utf8.length);");
+        emit("out.write(utf8);");
+        endBlock();
+
+        printJavaDoc("Writes binary data as a byte string");
+        emit("protected void writeBytes(OutputStream out, byte[] val) throws IOException");
+        startBlock();
+        emit("writeHeader(out, MAJOR_BYTES, val.length);");
+        emit("out.write(val);");
+        endBlock();
+
+        printJavaDoc("Writes a link to an object as a map with optional name and href members");
+        emit("protected void writeLink(OutputStream out, String name, String href) throws IOException");
+        startBlock();
+        emit("startMap(out);");
+        emit("if (name != null)");
+        startBlock();
+        emit("out.write(" + getEncodedStringConstant("KEY_", "name") + ");");
+        emit("writeString(out, name);");
+        endBlock();
+        emit("if (href != null)");
+        startBlock();
+        emit("out.write(" + getEncodedStringConstant("KEY_", "href") + ");");
+        emit("writeString(out, href);");
+        endBlock();
+        emit("endMap(out);");
+        endBlock();
+
+        printJavaDoc("Starts an indefinite length map");
+        emit("protected void startMap(OutputStream out) throws IOException");
+        startBlock();
+        emit("out.write(START_MAP);");
+        endBlock();
+
+        printJavaDoc("Ends an indefinite length map");
+        emit("protected void endMap(OutputStream out) throws IOException");
+        startBlock();
+        emit("out.write(BREAK);");
+        endBlock();
+    }
+
+
+    /**
+     * Prints the low level CBOR decoding methods
+     */
+    void printCborReaderMethods() throws IOException
+    {
+        emit("");
+        emit("");
+        emit("// scratch buffer used to decode text strings");
+        emit("byte[] textBuffer = new byte[64];");
+
+        printJavaDoc("Reads one byte, failing at the end of the stream");
+        emit("protected int readByte(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = in.read();");
+        emit("if (b < 0)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("return b;");
+        endBlock();
+
+        printJavaDoc("Reads a big endian value of the given size");
+        emit("protected long readBigEndian(InputStream in, int numBytes) throws IOException");
+        startBlock();
+        emit("long val = 0;");
+        emit("for (int i = 0; i < numBytes; i++)");
+        indent();
+        emit("val = (val << 8) | readByte(in);");
+        outdent();
+        emit("return val;");
+        endBlock();
+
+        printJavaDoc("Reads the argument following the initial byte of a data item, or returns -1 for indefinite lengths");
+        emit("protected long readArgument(InputStream in, int initialByte) throws IOException");
+        startBlock();
+        emit("int info = initialByte & 0x1F;");
+        emit("if (info < 24)");
+        indent();
+        emit("return info;");
+        outdent();
+        emit("else if (info == 31)");
+        indent();
+        emit("return -1;");
+        outdent();
+        emit("else if (info > 27)");
+        indent();
+        emit("throw new IOException(\"Invalid CBOR initial byte: \" + initialByte);");
+        outdent();
+        emit("return readBigEndian(in, 1 << (info - 24));");
+        endBlock();
+
+        printJavaDoc("Reads the header of a data item of the given major type and returns its argument");
+        emit("protected long readHeader(InputStream in, int major) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if ((b >>> 5) != major)");
+        indent();
+        emit("throw new IOException(\"Expected CBOR major type \" + major + \" but got \" + (b >>> 5));");
+        outdent();
+        emit("return readArgument(in, b);");
+        endBlock();
+
+        printJavaDoc("Reads an integer value");
+        emit("protected long readLong(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if ((b >>> 5) == MAJOR_UINT)");
+        indent();
+        emit("return readArgument(in, b);");
+        outdent();
+        emit("else if ((b >>> 5) == MAJOR_NINT)");
+        indent();
+        emit("return -1 - readArgument(in, b);");
+        outdent();
+        emit("throw new IOException(\"Expected CBOR integer but got initial byte \" + b);");
+        endBlock();
+
+        printJavaDoc("Reads a floating point value, also accepting half precision floats and integers");
+        emit("protected double readDouble(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if (b == FLOAT64)");
+        indent();
+        emit("return Double.longBitsToDouble(readBigEndian(in, 8));");
+        outdent();
+        emit("else if (b == FLOAT32)");
+        indent();
+        emit("return Float.intBitsToFloat((int)readBigEndian(in, 4));");
+        outdent();
+        emit("else if (b == FLOAT16)");
+        indent();
+        emit("return halfToFloat((int)readBigEndian(in, 2));");
+        outdent();
+        emit("else if ((b >>> 5) == MAJOR_UINT)");
+        indent();
+        emit("return readArgument(in, b);");
+        outdent();
+        emit("else if ((b >>> 5) == MAJOR_NINT)");
+        indent();
+        emit("return -1 - readArgument(in, b);");
+        outdent();
+        emit("throw new IOException(\"Expected CBOR number but got initial byte \" + b);");
+        endBlock();
+
+        emit("");
+        emit("");
+        emit("static float halfToFloat(int half)");
+        startBlock();
+        emit("int exp = (half >> 10) & 0x1F;");
+        emit("int mant = half & 0x3FF;");
+        emit("float val;");
+        emit("if (exp == 0)");
+        indent();
+        emit("val = mant * 0x1p-24f;");
+        outdent();
+        emit("else if (exp == 31)");
+        indent();
+        emit("val = (mant == 0) ? Float.POSITIVE_INFINITY : Float.NaN;");
+        outdent();
+        emit("else");
+        indent();
+        emit("val = Math.scalb((float)(mant + 1024), exp - 25);");
+        outdent();
+        emit("return (half & 0x8000) != 0 ? -val : val;");
+        endBlock();
+
+        printJavaDoc("Reads a float value");
+        emit("protected float readFloat(InputStream in) throws IOException");
+        startBlock();
+        emit("return (float)readDouble(in);");
+        endBlock();
+
+        printJavaDoc("Reads a boolean value");
+        emit("protected boolean readBoolean(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if (b == SIMPLE_TRUE)");
+        indent();
+        emit("return true;");
+        outdent();
+        emit("else if (b == SIMPLE_FALSE)");
+        indent();
+        emit("return false;");
+        outdent();
+        emit("throw new IOException(\"Expected CBOR boolean but got initial byte \" + b);");
+        endBlock();
+
+        printJavaDoc("Reads a text string");
+        emit("protected String readString(InputStream in) throws IOException");
+        startBlock();
+        emit("return readText(in, readHeader(in, MAJOR_TEXT));");
+        endBlock();
+
+        printJavaDoc("Reads the UTF-8 bytes of a text string whose header has been read");
+        emit("protected String readText(InputStream in, long length) throws IOException");
+        startBlock();
+        emit("if (length < 0 || length > Integer.MAX_VALUE)");
+        indent();
+        emit("throw new IOException(\"Unsupported CBOR string length: \" + length);");
+        outdent();
+        emit("");
+        emit("int len = (int)length;");
+        emit("if (len > textBuffer.length)");
+        indent();
+        emit("textBuffer = new byte[Math.max(len, textBuffer.length * 2)];");
+        outdent();
+        emit("readFully(in, textBuffer, len);");
+        emit("return new String(textBuffer, 0, len, StandardCharsets.UTF_8);");
+        endBlock();
+
+        printJavaDoc("Reads a byte string");
+        emit("protected byte[] readBytes(InputStream in) throws IOException");
+        startBlock();
+        emit("long length = readHeader(in, MAJOR_BYTES);");
+        emit("if (length < 0 || length > Integer.MAX_VALUE)");
+        indent();
+        emit("throw new IOException(\"Unsupported CBOR byte string length: \" + length);");
+        outdent();
+        emit("");
+        emit("byte[] val = new byte[(int)length];");
+        emit("readFully(in, val, val.length);");
+        emit("return val;");
+        endBlock();
+
+        printJavaDoc("Reads exactly the given number of bytes");
+        emit("protected void readFully(InputStream in, byte[] buf, int len) throws IOException");
+        startBlock();
+        emit("for (int pos = 0; pos < len; )");
+        startBlock();
+        emit("int n = in.read(buf, pos, len - pos);");
+        emit("if (n < 0)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("pos += n;");
+        endBlock();
+        endBlock();
+
+        printJavaDoc("Reads the header of a definite length array and returns its number of items");
+        emit("protected int readArrayHeader(InputStream in) throws IOException");
+        startBlock();
+        emit("long length = readHeader(in, MAJOR_ARRAY);");
+        emit("if (length < 0 || length > Integer.MAX_VALUE)");
+        indent();
+        emit("throw new IOException(\"Unsupported CBOR array length: \" + length);");
+        outdent();
+        emit("return (int)length;");
+        endBlock();
+
+        printJavaDoc("Reads the next key of an indefinite length map, or returns null at the end of the map");
+        emit("protected String readNextKey(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if (b == BREAK)");
+        indent();
+        emit("return null;");
+        outdent();
+        emit("if ((b >>> 5) != MAJOR_TEXT)");
+        indent();
+        emit("throw new IOException(\"Expected CBOR text key but got initial byte \" + b);");
+        outdent();
+        emit("return readText(in, readArgument(in, b));");
+        endBlock();
+
+        printJavaDoc("Reads the start of an object map and its name and href members, which come first",
+                new String[] {"prop property receiving the name and href, or null to ignore them"},
+                "the key of the next member, or null if the map only contains a link", false);
+        emit("protected String readObjectHeader(InputStream in, OgcProperty<?> prop) throws IOException");
+        startBlock();
+        emit("int b = readByte(in);");
+        emit("if (b != START_MAP)");
+        indent();
+        emit("throw new IOException(\"Expected indefinite length CBOR map but got initial byte \" + b);");
+        outdent();
+        emit("");
+        emit("String key;");
+        emit("while ((key = readNextKey(in)) != null)");
+        startBlock();
+        emit("if (key.equals(\"name\"))");
+        startBlock();
+        emit("String name = readString(in);");
+        emit("if (prop != null)");
+        indent();
+        emit("prop.setName(name);");
+        outdent();
+        endBlock();
+        emit("else if (key.equals(\"href\"))");
+        startBlock();
+        emit("String href = readString(in);");
+        emit("if (prop != null)");
+        indent();
+        emit("prop.setHref(href);");
+        outdent();
+        endBlock();
+        emit("else");
+        indent();
+        emit("break;");
+        outdent();
+        endBlock();
+        emit("");
+        emit("return key;");
+        endBlock();
+
+        printJavaDoc("Reads the value of the type member, which must be the given key");
+        emit("protected String readTypeName(InputStream in, String key) throws IOException");
+        startBlock();
+        emit("if (!\"type\".equals(key))");
+        indent();
+        emit("throw new IOException(\"Missing type member before \" + key);");
+        outdent();
+        emit("return readString(in);");
+        endBlock();
+
+        printJavaDoc("Skips a data item, e.g. the value of an unknown map member");
+        emit("protected void skipItem(InputStream in) throws IOException");
+        startBlock();
+        emit("skipItem(in, readByte(in));");
+        endBlock();
+
+        emit("");
+        emit("");
+        emit("protected void skipItem(InputStream in, int initialByte) throws IOException");
+        startBlock();
+        emit("int major = initialByte >>> 5;");
+        emit("long arg = readArgument(in, initialByte);");
+        emit("if (major == MAJOR_BYTES || major == MAJOR_TEXT)");
+        startBlock();
+        emit("if (arg < 0)");
+        indent();
+        emit("skipItems(in, -1);");
+        outdent();
+        emit("else");
+        indent();
+        emit("skipBytes(in, arg);");
+        outdent();
+        endBlock();
+        emit("else if (major == MAJOR_ARRAY)");
+        indent();
+        emit("skipItems(in, arg);");
+        outdent();
+        emit("else if (major == MAJOR_MAP)");
+        indent();
+        emit("skipItems(in, arg < 0 ? -1 : arg * 2);");
+        outdent();
+        emit("else if (major == MAJOR_TAG)");
+        indent();
+        emit("skipItem(in);");
+        outdent();
+        endBlock();
+
+        printJavaDoc("Skips the given number of data items, or items until a break if count is negative");
+        emit("protected void skipItems(InputStream in, long count) throws IOException");
+        startBlock();
+        emit("if (count < 0)");
+        startBlock();
+        emit("int b;");
+        emit("while ((b = readByte(in)) != BREAK)");
+        indent();
+        emit("skipItem(in, b);");
+        outdent();
+        endBlock();
+        emit("else");
+        startBlock();
+        emit("for (long i = 0; i < count; i++)");
+        indent();
+        emit("skipItem(in);");
+        outdent();
+        endBlock();
+        endBlock();
+
+        printJavaDoc("Skips the given number of bytes");
+        emit("protected void skipBytes(InputStream in, long len) throws IOException");
+        startBlock();
+        emit("while (len > 0)");
+        startBlock();
+        emit("long n = in.skip(len);");
+        emit("if (n <= 0)");
+        startBlock();
+        emit("readByte(in);");
+        emit("n = 1;");
+        endBlock();
+        emit("len -= n;");
+        endBlock();
+        endBlock();
+    }
+
+
+    /* **********************************/
+    /*         Utility Methods          */
+    /* **********************************/
+
+    public static String getBindingsFullClassName(String packageName)
+    {
+        return packageName + "." + BINDING_SUBPACKAGE_NAME + "." + BINDING_CLASS_NAME;
+    }
+
+}
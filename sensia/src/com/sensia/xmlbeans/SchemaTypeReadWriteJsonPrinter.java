@@ -77,6 +77,8 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
                 emit("import " + OGC_PROP_PACKAGE_NAME + OGC_PROP_CLASS_NAME + ";");
         }
         emit("import " + _packageName + ".Factory;");
+        printMetricsImports();
+        printEventImports();
         
         emit("");
         emit("");
@@ -90,6 +92,17 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         
         // constructor
         printConstructor(BINDING_CLASS_NAME);
+        printFreezeBeansSetter(bindingClasses.values());
+        
+        // number formatting helpers
+        printDecimalWriterMethods();
+        
+        // hot path metrics registry
+        printMetricsRegistry(_packageName + ":type=" + BINDING_CLASS_NAME);
+        
+        // JFR events
+        printEventStateVars(bindingClasses.values());
+        printEventClasses(_packageName, "Json");
         
         _charBuffer.writeTo(_fileWriter);
         endBlock();
@@ -164,6 +177,7 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         i = 1;
         for (Entry<String, String> dep: bindingClasses.entrySet())
             emit(dep.getValue() + " = new " + dep.getKey() + "(ns" + i++ + "Factory);");
+        printShareEventStateCall();
         endBlock();
     }
     
@@ -305,6 +319,8 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
             javaTypeName = javaWrappedType(javaTypeName);
         
         startBlock();
+        printStartMetrics(null);
+        printStartEvent("JsonDecodeEvent");
         
         if (contentType.isSimpleType())
         {
@@ -336,6 +352,8 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
             emit("reader.endObject();");
         }
         
+        printEndEvent(eltName);
+        printEndMetrics(eltName, "recordRead", null);
         endBlock();
     }
     
@@ -349,6 +367,7 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         emit("public " + javaTypeName + " read" + complexTypeName + "(JsonReader reader) throws XMLStreamException");
         
         startBlock();
+        printStartBeanEvent();
         
         //emit(javaTypeName + " bean = new " + sType.getShortJavaImplName() + "();");
         emit(javaTypeName + " bean = factory.new" + sType.getShortJavaName() + "();");
@@ -372,8 +391,10 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         }
         
         emit("");
+        printFreezeBean();
         emit("return bean;");
         
+        printEndBeanEvent();
         endBlock();
     }
     
@@ -774,7 +795,9 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         printJavaDoc("Write method for " + eltName + " element");
         emit("public void write" + eltName + "(XMLStreamWriter writer, " + javaTypeName + " bean) throws XMLStreamException");
         
-        startBlock();        
+        startBlock();
+        printStartMetrics(null);
+        printStartEvent("JsonEncodeEvent");
         emit("writer.writeStartElement(NS_URI, \"" + eltName + "\");");
         
         // add namespace declarations if needed
@@ -783,19 +806,16 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         if (contentType.isSimpleType())
         {
             // write inline value
-            String getStringCall;
-            if (javaTypeForSchemaType(contentType).equals(String.class.getSimpleName()))
-                getStringCall = "bean";
-            else
-                getStringCall = "getStringValue(bean)";
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForSchemaType(contentType), "bean");
         }
         else
         {
             printCallWriteType(contentType);
         }
         
-        emit("writer.writeEndElement();");        
+        emit("writer.writeEndElement();");
+        printEndEvent(eltName);
+        printEndMetrics(eltName, "recordWrite", null);
         endBlock();        
     }
     
@@ -809,6 +829,7 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         emit("public void write" + complexTypeName + "(XMLStreamWriter writer, " + javaTypeName + " bean) throws XMLStreamException");
         
         startBlock();
+        printStartBeanEvent();
         
         if (hasAttributes(sType))
             printCallWriteAttributes(sType);
@@ -821,10 +842,10 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         else if (hasTextValue(sType))
         {
             emit("");
-            String getStringCall = "getStringValue(bean.getValue())";
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForSchemaType(sType.getBaseType()), "bean.getValue()");
         }
         
+        printEndBeanEvent();
         endBlock();
     }
     
@@ -1082,10 +1103,7 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
         else
         {
             // case of inline value
-            String getStringCall = "getStringValue(" + accessCall + ")";
-            if (javaTypeForProperty(sProp).equals(String.class.getSimpleName()))
-                getStringCall = accessCall;
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForProperty(sProp), accessCall);
         }
         
         emit("writer.writeEndElement();");
@@ -1106,7 +1124,7 @@ public final class SchemaTypeReadWriteJsonPrinter extends AbstractCodePrinter
     {
         String propType = javaTypeForProperty(sProp);
         addUsedJavaType(javaFullTypeForProperty(sProp));
-        String getListCall = "bean.get" + sProp.getJavaPropertyName() + "List()";
+        String getListCall = printListVariable(sProp);
         emit("numItems = " + getListCall + ".size();");
         emit("for (int i = 0; i < numItems; i++)");
         startBlock();
@@ -0,0 +1,1486 @@
+package com.sensia.xmlbeans;
+
+import java.io.CharArrayWriter;
+import java.io.Writer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import org.apache.xmlbeans.impl.common.NameUtil;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.SchemaProperty;
+
+
+/**
+ * Prints the java code for reading and writing schema types from and to the
+ * protocol buffers wire format, following the messages of the schema printed
+ * by {@link SchemaTypeProtobufSchemaPrinter}.<br/>
+ * The generated code doesn't depend on the protobuf runtime or on classes
+ * generated by protoc. Readers build objects through the package factory,
+ * like the XML readers.
+ */
+public final class SchemaTypeReadWriteProtobufPrinter extends AbstractProtobufPrinter
+{
+    public final static String BINDING_CLASS_NAME = "ProtobufStreamBindings";
+    public final static String BINDING_SUBPACKAGE_NAME = "bind";
+
+    CharArrayWriter _charBuffer = new CharArrayWriter(1024);
+    Writer _fileWriter;
+    String _packageName;
+    List<SchemaType> processedTypes = new ArrayList<SchemaType>();
+    List<SchemaType> pendingTypes = new ArrayList<SchemaType>();
+    Map<String, String> bindingClasses = new LinkedHashMap<String, String>();
+    List<SchemaProperty> pendingChoices = new ArrayList<SchemaProperty>();
+    Map<String, String> arrayItemReadCalls = new TreeMap<String, String>();
+    int bufCount;
+
+
+    public SchemaTypeReadWriteProtobufPrinter(Writer fileWriter)
+    {
+        _indent = 0;
+        _fileWriter = fileWriter;
+        _writer = _charBuffer;
+    }
+
+
+    public void endClassAndClose() throws IOException
+    {
+        outdent();
+
+        // write package and imports
+        _writer = _fileWriter;
+        emit("package " + _packageName + "." + BINDING_SUBPACKAGE_NAME + ";");
+
+        emit("");
+        emit("import java.io.ByteArrayOutputStream;");
+        emit("import java.io.EOFException;");
+        emit("import java.io.IOException;");
+        emit("import java.io.InputStream;");
+        emit("import java.io.OutputStream;");
+        emit("import java.nio.charset.StandardCharsets;");
+        emit("import java.util.Arrays;");
+        if (!textWriteTypes.isEmpty() || !textReadTypes.isEmpty())
+            emit("import net.opengis.AbstractXMLStreamBindings;");
+
+        Collections.sort(usedJavaTypes);
+        for (String javaType: usedJavaTypes)
+        {
+            // skip primitive types
+            if (javaType.indexOf('.') < 0)
+                continue;
+
+            // skip array types
+            if (javaType.contains("[]"))
+                continue;
+
+            // skip java.lang types
+            if (javaType.startsWith("java.lang"))
+                continue;
+
+            emit("import " + javaType + ";");
+
+            if (javaType.endsWith("." + OGC_PROP_IFACE_NAME))
+                emit("import " + OGC_PROP_PACKAGE_NAME + OGC_PROP_CLASS_NAME + ";");
+        }
+        emit("import " + _packageName + ".Factory;");
+
+        emit("");
+        emit("");
+        emit("/**");
+        emit(" * Protocol buffers bindings for package " + _packageName + ".<br/>");
+        emit(" * Each write method writes the fields of the message corresponding to the");
+        emit(" * element or type, as defined in " + SchemaTypeProtobufSchemaPrinter.getSchemaFileName(_packageName) + ",");
+        emit(" * and each read method reads them back until the given stream position.");
+        emit(" * Nested messages are encoded in reusable scratch buffers, one per nesting level,");
+        emit(" * and the read position is kept in the instance, so instances must not be shared");
+        emit(" * between threads.");
+        emit(" */");
+        emit("public class " + BINDING_CLASS_NAME);
+        startBlock();
+        printDependencyBindingsVars();
+
+        // print factory var
+        emit("Factory factory;");
+
+        // constructor
+        printConstructor(BINDING_CLASS_NAME);
+
+        // wire format encoding and decoding helpers
+        printProtobufWriterMethods();
+        printProtobufReaderMethods();
+        printArrayReaderMethods();
+
+        // dates and other runtime types written as text
+        printTextValuesClass();
+
+        _charBuffer.writeTo(_fileWriter);
+        endBlock();
+
+        _fileWriter.close();
+    }
+
+
+    public void startClass(String packageName) throws IOException
+    {
+        _packageName = packageName;
+        indent();
+    }
+
+
+    void printDependencyBindingsVars() throws IOException
+    {
+        if (bindingClasses.size() > 0)
+            emit("");
+
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+            emit(dep.getKey() + " " + dep.getValue() + ";");
+    }
+
+
+    String getBindingsVarName(SchemaType sType)
+    {
+        if (sType.getShortJavaName().equals("Object") || sType.getFullJavaName().startsWith(_packageName))
+            return "this";
+
+        String packageName = getJavaPackage(sType, false);
+        String bindingClass = getBindingsFullClassName(packageName);
+        String varName = bindingClasses.get(bindingClass);
+
+        if (varName == null)
+        {
+            varName = "ns" + (bindingClasses.size()+1) + "Bindings";
+            bindingClasses.put(bindingClass, varName);
+        }
+
+        return varName;
+    }
+
+
+    @Override
+    void printConstructor(String className) throws IOException
+    {
+        emit("");
+        emit("");
+
+        // generate factory arguments
+        int i = 1;
+        String factoryArgs = "";
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+        {
+            factoryArgs += ", " + dep.getKey().replace(BINDING_SUBPACKAGE_NAME + "." + BINDING_CLASS_NAME, "Factory");
+            factoryArgs += " ns" + i + "Factory";
+            i++;
+        }
+
+        emit("public " + className + "(Factory factory" + factoryArgs + ")");
+        startBlock();
+        emit("this.factory = factory;");
+        i = 1;
+        for (Entry<String, String> dep: bindingClasses.entrySet())
+            emit(dep.getValue() + " = new " + dep.getKey() + "(ns" + i++ + "Factory);");
+        endBlock();
+    }
+
+
+    public void printReadWriteMethods(SchemaType sType) throws IOException
+    {
+        if (sType.isDocumentType())
+            printReadWriteElementMethods(sType);
+        else
+            printReadWriteTypeMethods(sType);
+
+        // print methods for anonymous types referenced by properties
+        while (!pendingTypes.isEmpty())
+            printReadWriteTypeMethods(pendingTypes.remove(0));
+    }
+
+
+    void printReadWriteElementMethods(SchemaType eltType) throws IOException
+    {
+        SchemaType contentType = eltType.getContentModel().getType();
+        if (contentType == null)
+            return;
+
+        // also print write methods for this element complex type if in same package
+        // this will only be done if complex type hasn't been processed yet
+        String eltNs = getJavaPackage(eltType, false);
+        String typeNs = getJavaPackage(contentType, false);
+        if (contentType.isAnonymousType() && !contentType.isSimpleType() && eltNs.equals(typeNs))
+            printReadWriteTypeMethods(contentType);
+
+        // simple values are written inline
+        if (isScalarValue(eltType) || !isSupportedValue(eltType))
+            return;
+
+        addUsedJavaType(contentType.getFullJavaName());
+        List<SchemaType> members = getSubstitutionMembers(eltType);
+        if (!members.isEmpty())
+        {
+            printReadMethodAbstract(eltType, contentType, members);
+            printWriteMethodAbstract(eltType, contentType, members);
+        }
+        else
+        {
+            printReadMethodConcrete(eltType, contentType);
+            printWriteMethodConcrete(eltType, contentType);
+        }
+    }
+
+
+    void printReadWriteTypeMethods(SchemaType sType) throws IOException
+    {
+        // no need for read/write methods for simple types and string enums
+        if (sType.isSimpleType() || !MySchemaTypeSystemCompiler.isGenerated(sType))
+            return;
+
+        if (!processedTypes.contains(sType))
+        {
+            addUsedJavaType(sType.getFullJavaName());
+            if (!sType.isAbstract())
+                printReadMessageMethod(sType);
+            printReadFieldMethod(sType);
+            printWriteFieldsMethod(sType);
+            processedTypes.add(sType);
+        }
+    }
+
+
+    /*********************************************/
+    /**         Read methods generation         **/
+    /*********************************************/
+
+    void printReadShortMethod(String methodName, String javaTypeName) throws IOException
+    {
+        emit("public " + javaTypeName + " " + methodName + "(InputStream in) throws IOException");
+        startBlock();
+        emit("return " + methodName + "(in, Long.MAX_VALUE);");
+        endBlock();
+        emit("");
+        emit("");
+    }
+
+
+    void printReadMethodAbstract(SchemaType eltType, SchemaType contentType, List<SchemaType> members) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Dispatcher method for reading classes derived from " + eltName + ", until the end of the stream or the given position");
+        printReadShortMethod("read" + eltName, javaTypeName);
+        emit("public " + javaTypeName + " read" + eltName + "(InputStream in, long limit) throws IOException");
+        startBlock();
+
+        // field number is the index of the member in the substitution group
+        List<SchemaType> valueTypes = new ArrayList<SchemaType>();
+        for (SchemaType elt: members)
+        {
+            String javaName = elt.getShortJavaName();
+            if (!javaName.endsWith("Element"))
+                addUsedJavaType(elt.getFullJavaName());
+            valueTypes.add(elt);
+        }
+
+        printReadOneofFields(javaTypeName, valueTypes);
+        endBlock();
+    }
+
+
+    void printReadMethodConcrete(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Read method for " + eltName + " element, until the end of the stream or the given position");
+        printReadShortMethod("read" + eltName, javaTypeName);
+        emit("public " + javaTypeName + " read" + eltName + "(InputStream in, long limit) throws IOException");
+        startBlock();
+        emit("return " + getReadMessageCall(contentType, "limit") + ";");
+        endBlock();
+    }
+
+
+    /**
+     * Prints code reading the single field set in a oneof message, the field
+     * number being the index of the value type in the list, starting at 1
+     */
+    void printReadOneofFields(String javaTypeName, List<SchemaType> valueTypes) throws IOException
+    {
+        emit(javaTypeName + " value = null;");
+        emit("int tag;");
+        emit("while ((tag = readTag(in, limit)) != 0)");
+        startBlock();
+        emit("int fieldNum = tag >>> 3;");
+
+        boolean first = true;
+        int fieldNum = 1;
+        for (SchemaType valueType: valueTypes)
+        {
+            if (valueType != null && isSupportedValue(valueType))
+            {
+                emit((first ? "" : "else ") + "if (fieldNum == " + fieldNum + ")");
+                indent();
+                emit("value = " + getReadValueFieldCall(valueType) + ";");
+                outdent();
+                first = false;
+            }
+            fieldNum++;
+        }
+
+        if (!first)
+            emit("else");
+        indent();
+        emit("skipField(in, tag);");
+        outdent();
+        endBlock();
+
+        emit("");
+        emit("return value;");
+    }
+
+
+    /**
+     * @return expression creating an object of the given type and reading
+     * its fields until the given position
+     */
+    String getReadMessageCall(SchemaType sType, String limitCall)
+    {
+        String bindingsInstance = getBindingsVarName(sType);
+        if (sType.isAbstract())
+            return bindingsInstance + ".abstractValue(\"" + getSchemaComponentLocalName(sType) + "\")";
+
+        if (sType.isAnonymousType() && !processedTypes.contains(sType) && !pendingTypes.contains(sType))
+            pendingTypes.add(sType);
+        return bindingsInstance + ".read" + getSchemaComponentLocalName(sType) + "Message(in, " + limitCall + ")";
+    }
+
+
+    void printReadMessageMethod(SchemaType sType) throws IOException
+    {
+        String shortJavaName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Reads a " + complexTypeName + " message until the given position");
+        emit("public " + shortJavaName + " read" + complexTypeName + "Message(InputStream in, long limit) throws IOException");
+        startBlock();
+        emit(shortJavaName + " bean = factory.new" + sType.getShortJavaName() + "();");
+        emit("int tag;");
+        emit("while ((tag = readTag(in, limit)) != 0)");
+        startBlock();
+        emit("if (!read" + complexTypeName + "Field(in, tag, bean))");
+        indent();
+        emit("skipField(in, tag);");
+        outdent();
+        endBlock();
+        emit("");
+        emit("return bean;");
+        endBlock();
+    }
+
+
+    void printReadFieldMethod(SchemaType sType) throws IOException
+    {
+        String shortJavaName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Reads a field of " + complexTypeName + " complex type, whose tag has been read",
+                null, "true if the field was read, false if it is unknown and must be skipped", false);
+        emit("public boolean read" + complexTypeName + "Field(InputStream in, int tag, " + shortJavaName + " bean) throws IOException");
+        startBlock();
+        emit("int fieldNum = tag >>> 3;");
+
+        boolean first = true;
+        if (hasValueField(sType))
+        {
+            SchemaType textValueType = getTextValueType(sType);
+            String javaType = javaTypeForSchemaType(textValueType);
+            emit("if (fieldNum == " + VALUE_FIELD_NUM + ")");
+            startBlock();
+            emit("// text value");
+            printCheckWireType(javaType);
+            printReadScalarProperty(textValueType, javaType, "Value");
+            endBlock();
+            first = false;
+        }
+
+        int fieldNum = getFirstFieldNumber(sType);
+        for (SchemaProperty sProp: getProtoProperties(sType))
+        {
+            if (isSupportedProperty(sProp))
+            {
+                emit((first ? "" : "else ") + "if (fieldNum == " + fieldNum + ")");
+                startBlock();
+                emit("// " + sProp.getName().getLocalPart());
+                if (isList(sProp))
+                    printReadPropertyItem(sProp);
+                else
+                    printReadSingleProperty(sProp);
+                endBlock();
+                first = false;
+            }
+            fieldNum++;
+        }
+
+        // fields of base types have the same numbers
+        SchemaType baseType = getProtoBaseType(sType);
+        String baseCall = "false";
+        if (baseType != null)
+        {
+            String bindingsInstance = getBindingsVarName(baseType);
+            baseCall = bindingsInstance + ".read" + getSchemaComponentLocalName(baseType) + "Field(in, tag, bean)";
+        }
+
+        if (first)
+            emit("return " + baseCall + ";");
+        else
+        {
+            emit("else");
+            indent();
+            emit("return " + baseCall + ";");
+            outdent();
+            emit("");
+            emit("return true;");
+        }
+
+        endBlock();
+
+        // print dispatchers of choice properties
+        while (!pendingChoices.isEmpty())
+            printReadChoiceMethod(pendingChoices.remove(0));
+    }
+
+
+    void printReadSingleProperty(SchemaProperty sProp) throws IOException
+    {
+        String propName = sProp.getJavaPropertyName();
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            // case of inline value
+            String javaType = javaTypeForProperty(sProp);
+            printCheckWireType(javaType);
+            printReadScalarProperty(sProp.getType(), javaType, propName);
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            String typeName = javaTypeForProperty(sProp);
+            String varName = sProp.getName().getLocalPart() + "Prop";
+            emit("checkWireType(tag, WIRE_LEN);");
+            emit(OGC_PROP_IFACE_NAME + "<" + typeName + "> " + varName + " = bean.get" + propName + "Property();");
+            printReadPropertyWrapper(sProp, varName);
+        }
+        else
+        {
+            emit("checkWireType(tag, WIRE_LEN);");
+            emit("bean.set" + propName + "(" + getReadObjectValueCall(sProp) + ");");
+        }
+    }
+
+
+    /**
+     * Prints code reading one item of a list property, each item being
+     * written as a separate field with the same number
+     */
+    void printReadPropertyItem(SchemaProperty sProp) throws IOException
+    {
+        String propName = sProp.getJavaPropertyName();
+        String propType = javaTypeForProperty(sProp);
+        addUsedJavaType(javaFullTypeForProperty(sProp));
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            printCheckWireType(propType);
+            emit("bean.add" + propName + "(" + getReadScalarCall(sProp.getType(), propType, true) + ");");
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            emit("checkWireType(tag, WIRE_LEN);");
+            emit(OGC_PROP_IFACE_NAME + "<" + propType + "> item = new " + OGC_PROP_CLASS_NAME + "<" + propType + ">();");
+            printReadPropertyWrapper(sProp, "item");
+            emit("bean.get" + propName + "List().add(item);");
+        }
+        else
+        {
+            emit("checkWireType(tag, WIRE_LEN);");
+            emit("bean.add" + propName + "(" + getReadObjectValueCall(sProp) + ");");
+        }
+    }
+
+
+    /**
+     * Prints code reading a complex OGC property wrapper message with the
+     * name, and either the href or the value
+     */
+    void printReadPropertyWrapper(SchemaProperty sProp, String varName) throws IOException
+    {
+        emit("long propLimit = readLimit(in);");
+        emit("int propTag;");
+        emit("while ((propTag = readTag(in, propLimit)) != 0)");
+        startBlock();
+        emit("int propField = propTag >>> 3;");
+        emit("if (propField == 1)");
+        indent();
+        emit(varName + ".setName(readString(in));");
+        outdent();
+        emit("else if (propField == 2)");
+        indent();
+        emit(varName + ".setHref(readString(in));");
+        outdent();
+        emit("else if (propField == 3)");
+        indent();
+        emit(varName + ".setValue(" + getReadObjectValueCall(sProp) + ");");
+        outdent();
+        emit("else");
+        indent();
+        emit("skipField(in, propTag);");
+        outdent();
+        endBlock();
+    }
+
+
+    /**
+     * @return expression reading an object value, once its tag has been read
+     */
+    String getReadObjectValueCall(SchemaProperty sProp)
+    {
+        if (isChoice(sProp))
+        {
+            if (!pendingChoices.contains(sProp))
+                pendingChoices.add(sProp);
+            return getReadChoiceMethodName(sProp) + "(in, readLimit(in))";
+        }
+        else
+            return getReadValueFieldCall(getValueType(sProp));
+    }
+
+
+    String getReadChoiceMethodName(SchemaProperty sProp)
+    {
+        return "read" + getSchemaComponentLocalName(sProp.getContainerType()) + sProp.getJavaPropertyName() + "Choice";
+    }
+
+
+    void printReadChoiceMethod(SchemaProperty sProp) throws IOException
+    {
+        String propType = javaTypeForProperty(sProp);
+
+        printJavaDoc("Reads the " + getChoiceMessageName(sProp) + " message until the given position");
+        emit("protected " + propType + " " + getReadChoiceMethodName(sProp) + "(InputStream in, long limit) throws IOException");
+        startBlock();
+
+        // field number is the index of the item in the choice
+        List<SchemaType> valueTypes = new ArrayList<SchemaType>();
+        for (SchemaProperty item: sProp.getType().getElementProperties())
+            valueTypes.add(getChoiceItemValueType(item));
+
+        printReadOneofFields(propType, valueTypes);
+        endBlock();
+    }
+
+
+    /**
+     * @return expression reading the value of an element or type written
+     * as a single field, once its tag has been read
+     */
+    String getReadValueFieldCall(SchemaType valueType)
+    {
+        if (isScalarValue(valueType))
+        {
+            SchemaType contentType = getContentType(valueType);
+            return getReadScalarCall(contentType, javaTypeForSchemaType(contentType), true);
+        }
+
+        if (valueType.isDocumentType())
+        {
+            String bindingsInstance = getBindingsVarName(valueType);
+            return bindingsInstance + ".read" + getSchemaComponentLocalName(valueType) + "(in, readLimit(in))";
+        }
+
+        return getReadMessageCall(valueType, "readLimit(in)");
+    }
+
+
+    /**
+     * Prints code checking the wire type of a scalar field, see {@link #printWriteScalarField}
+     */
+    void printCheckWireType(String javaType) throws IOException
+    {
+        String wireType;
+        String protoType = javaType.endsWith("[]") ? null : getProtoScalarType(javaType);
+        if (protoType == null || protoType.equals("string"))
+            wireType = "WIRE_LEN";
+        else if (protoType.equals("double"))
+            wireType = "WIRE_I64";
+        else if (protoType.equals("float"))
+            wireType = "WIRE_I32";
+        else
+            wireType = "WIRE_VARINT";
+
+        emit("checkWireType(tag, " + wireType + ");");
+    }
+
+
+    /**
+     * Prints code setting a simple value property, arrays being written as
+     * packed fields, or repeated fields for strings, that can be split
+     */
+    void printReadScalarProperty(SchemaType sType, String javaType, String propName) throws IOException
+    {
+        if (javaType.endsWith("[]"))
+        {
+            String itemType = javaType.substring(0, javaType.length()-2);
+            String appendMethod = getAppendItemsMethodName(sType, itemType);
+            emit("bean.set" + propName + "(" + appendMethod + "(in, bean.get" + propName + "()));");
+        }
+        else
+            emit("bean.set" + propName + "(" + getReadScalarCall(sType, javaType, false) + ");");
+    }
+
+
+    /**
+     * @return expression reading a scalar value, once its tag has been read
+     */
+    String getReadScalarCall(SchemaType sType, String javaType, boolean nested)
+    {
+        if (javaType.endsWith("[]"))
+        {
+            String itemType = javaType.substring(0, javaType.length()-2);
+            getAppendItemsMethodName(sType, itemType);
+            return "read" + getArrayHelperSuffix(itemType) + "Array(in, readLimit(in))";
+        }
+
+        String protoType = getProtoScalarType(javaType);
+        if (protoType.equals("string"))
+        {
+            if (javaType.equals("String"))
+                return "readString(in)";
+            return getTextValueReadCall(sType, javaType, "readString(in)");
+        }
+        else
+            return getReadNumberCall(javaType);
+    }
+
+
+    String getReadNumberCall(String javaType)
+    {
+        String protoType = getProtoScalarType(javaType);
+        if (protoType.equals("double"))
+            return "readDouble(in)";
+        else if (protoType.equals("float"))
+            return "readFloat(in)";
+        else if (protoType.equals("bool"))
+            return "(readVarint(in) != 0)";
+        else if (javaType.equals("long") || javaType.equals("Long"))
+            return "readVarint(in)";
+        else if (javaType.equals("short") || javaType.equals("Short"))
+            return "(short)readVarint(in)";
+        else if (javaType.equals("byte") || javaType.equals("Byte"))
+            return "(byte)readVarint(in)";
+        else
+            return "(int)readVarint(in)";
+    }
+
+
+    /**
+     * Registers an array item type and returns the name of the generated
+     * method appending the items of one field to an array
+     */
+    String getAppendItemsMethodName(SchemaType sType, String itemType)
+    {
+        if (!arrayItemReadCalls.containsKey(itemType))
+        {
+            String readCall;
+            if (getProtoScalarType(itemType).equals("string"))
+            {
+                SchemaType itemSchemaType = (sType != null) ? sType.getListItemType() : null;
+                readCall = itemType.equals("String") ? "readString(in)" : getTextValueReadCall(itemSchemaType, itemType, "readString(in)");
+            }
+            else
+                readCall = getReadNumberCall(itemType);
+            arrayItemReadCalls.put(itemType, readCall);
+        }
+
+        return "append" + getArrayHelperSuffix(itemType) + "Items";
+    }
+
+
+    String getArrayHelperSuffix(String itemType)
+    {
+        return NameUtil.upperCamelCase(itemType);
+    }
+
+
+    /*********************************************/
+    /**         Write methods generation        **/
+    /*********************************************/
+
+    void printWriteMethodAbstract(SchemaType eltType, SchemaType contentType, List<SchemaType> members) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Dispatcher method for writing classes derived from " + eltName);
+        emit("public void write" + eltName + "(OutputStream out, " + javaTypeName + " bean) throws IOException");
+        startBlock();
+        bufCount = 0;
+
+        // write dispatcher to derived types
+        // field number is the index of the member in the substitution group
+        int fieldNum = 1;
+        for (SchemaType elt: members)
+        {
+            String javaName = elt.getShortJavaName();
+            if (javaName.endsWith("Element"))
+                javaName = elt.getContentModel().getType().getShortJavaName();
+            else
+                addUsedJavaType(elt.getFullJavaName());
+
+            emit((fieldNum > 1 ? "else " : "") + "if (bean instanceof " + javaName + ")");
+            startBlock();
+            printWriteValueField(elt, fieldNum++, "(" + javaName + ")bean", "out");
+            endBlock();
+        }
+
+        emit("else");
+        indent();
+        emit("throw new IOException(\"Unsupported type: \" + bean.getClass().getCanonicalName());");
+        outdent();
+
+        endBlock();
+    }
+
+
+    void printWriteMethodConcrete(SchemaType eltType, SchemaType contentType) throws IOException
+    {
+        String javaTypeName = contentType.getShortJavaName();
+        String eltName = getSchemaComponentLocalName(eltType);
+
+        printJavaDoc("Write method for " + eltName + " element");
+        emit("public void write" + eltName + "(OutputStream out, " + javaTypeName + " bean) throws IOException");
+        startBlock();
+        String bindingsInstance = getBindingsVarName(contentType);
+        emit(bindingsInstance + ".write" + getSchemaComponentLocalName(contentType) + "Fields(out, bean);");
+        endBlock();
+    }
+
+
+    void printWriteFieldsMethod(SchemaType sType) throws IOException
+    {
+        String shortJavaName = sType.getShortJavaName();
+        String complexTypeName = getSchemaComponentLocalName(sType);
+
+        printJavaDoc("Writes fields of " + complexTypeName + " complex type");
+        emit("public void write" + complexTypeName + "Fields(OutputStream out, " + shortJavaName + " bean) throws IOException");
+        startBlock();
+        bufCount = 0;
+
+        // fields of base types are written first with the same numbers
+        SchemaType baseType = getProtoBaseType(sType);
+        if (baseType != null)
+        {
+            String bindingsInstance = getBindingsVarName(baseType);
+            emit(bindingsInstance + ".write" + getSchemaComponentLocalName(baseType) + "Fields(out, bean);");
+        }
+
+        if (hasValueField(sType))
+        {
+            emit("");
+            emit("// text value");
+            printWriteScalarField(javaTypeForSchemaType(getTextValueType(sType)), VALUE_FIELD_NUM, "bean.getValue()", "out", false);
+        }
+
+        // declare local variables according to types of properties we have
+        List<SchemaProperty> props = getProtoProperties(sType);
+        for (SchemaProperty sProp: props)
+        {
+            if (isList(sProp))
+            {
+                emit("int numItems;");
+                break;
+            }
+        }
+
+        int fieldNum = getFirstFieldNumber(sType);
+        for (SchemaProperty sProp: props)
+        {
+            emit("");
+            emit("// " + sProp.getName().getLocalPart());
+            if (isList(sProp))
+                printWritePropertyList(sProp, fieldNum);
+            else if (sProp.extendsJavaOption())
+                printWriteOptionalProperty(sProp, fieldNum);
+            else
+                printWriteSingleProperty(sProp, fieldNum);
+            fieldNum++;
+        }
+
+        endBlock();
+    }
+
+
+    void printWriteOptionalProperty(SchemaProperty sProp, int fieldNum) throws IOException
+    {
+        if (!isSupportedProperty(sProp))
+        {
+            emit("// unsupported type, not written");
+            return;
+        }
+
+        String isSetMethod = sProp.getJavaPropertyName();
+        emit("if (bean.isSet" + isSetMethod + "())");
+        startBlock();
+        printWriteSingleProperty(sProp, fieldNum);
+        endBlock();
+    }
+
+
+    void printWriteSingleProperty(SchemaProperty sProp, int fieldNum) throws IOException
+    {
+        if (!isSupportedProperty(sProp))
+        {
+            emit("// unsupported type, not written");
+            return;
+        }
+
+        String propName = sProp.getJavaPropertyName();
+
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            // case of inline value
+            printWriteScalarField(javaTypeForProperty(sProp), fieldNum, "bean.get" + propName + "()", "out", false);
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            String typeName = javaTypeForProperty(sProp);
+            String varName = sProp.getName().getLocalPart() + "Prop";
+            emit(OGC_PROP_IFACE_NAME + "<" + typeName + "> " + varName + " = bean.get" + propName + "Property();");
+            printWritePropertyWrapper(sProp, fieldNum, varName);
+        }
+        else
+            printWriteObjectValue(sProp, fieldNum, "bean.get" + propName + "()", "out");
+    }
+
+
+    void printWritePropertyList(SchemaProperty sProp, int fieldNum) throws IOException
+    {
+        if (!isSupportedProperty(sProp))
+        {
+            emit("// unsupported type, not written");
+            return;
+        }
+
+        String propType = javaTypeForProperty(sProp);
+        addUsedJavaType(javaFullTypeForProperty(sProp));
+        String getListCall = printListVariable(sProp);
+        emit("numItems = " + getListCall + ".size();");
+        emit("for (int i = 0; i < numItems; i++)");
+        startBlock();
+
+        // items are written as separate fields with the same number
+        if (sProp.getJavaTypeCode() != SchemaProperty.XML_OBJECT)
+        {
+            emit(propType + " item = " + getListCall + ".get(i);");
+            printWriteScalarField(propType, fieldNum, "item", "out", true);
+        }
+        else if (isComplexOgcProperty(sProp))
+        {
+            emit(OGC_PROP_IFACE_NAME + "<" + propType + "> item = " + getListCall + ".getProperty(i);");
+            printWritePropertyWrapper(sProp, fieldNum, "item");
+        }
+        else
+        {
+            emit(propType + " item = " + getListCall + ".get(i);");
+            printWriteObjectValue(sProp, fieldNum, "item", "out");
+        }
+
+        endBlock();
+    }
+
+
+    /**
+     * Prints code writing a complex OGC property as a wrapper message with
+     * the name, and either the href or the value
+     */
+    void printWritePropertyWrapper(SchemaProperty sProp, int fieldNum, String varName) throws IOException
+    {
+        String bufName = nextBufferName();
+        emit("ByteArrayOutputStream " + bufName + " = startMessage();");
+
+        if (hasName(sProp))
+        {
+            emit("if (" + varName + ".getName() != null)");
+            indent();
+            emit("writeStringField(" + bufName + ", 1, " + varName + ".getName());");
+            outdent();
+        }
+
+        emit("if (" + varName + ".hasValue() && !" + varName + ".hasHref())");
+        startBlock();
+        printWriteObjectValue(sProp, 3, varName + ".getValue()", bufName);
+        endBlock();
+        emit("else if (" + varName + ".hasHref())");
+        indent();
+        emit("writeStringField(" + bufName + ", 2, " + varName + ".getHref());");
+        outdent();
+
+        emit("endMessage(out, " + fieldNum + ", " + bufName + ");");
+    }
+
+
+    void printWriteObjectValue(SchemaProperty sProp, int fieldNum, String accessCall, String outVar) throws IOException
+    {
+        if (isChoice(sProp))
+        {
+            // write choice message with field number of the selected item
+            String bufName = nextBufferName();
+            emit("ByteArrayOutputStream " + bufName + " = startMessage();");
+
+            boolean first = true;
+            int itemNum = 1;
+            SchemaProperty[] choiceProps = sProp.getType().getElementProperties();
+            for (SchemaProperty item: choiceProps)
+            {
+                SchemaType valueType = getChoiceItemValueType(item);
+                if (isSupportedValue(valueType))
+                {
+                    String choiceType = item.javaBasedOnType().getShortJavaName();
+                    emit((first ? "" : "else ") + "if (" + accessCall + " instanceof " + choiceType + ")");
+                    startBlock();
+                    printWriteValueField(valueType, itemNum, "(" + choiceType + ")" + accessCall, bufName);
+                    endBlock();
+                    first = false;
+                }
+                itemNum++;
+            }
+
+            emit("else");
+            indent();
+            emit("throw new IOException(\"Unsupported type: \" + " + accessCall + ".getClass().getCanonicalName());");
+            outdent();
+            emit("endMessage(" + outVar + ", " + fieldNum + ", " + bufName + ");");
+        }
+        else
+            printWriteValueField(getValueType(sProp), fieldNum, accessCall, outVar);
+    }
+
+
+    /**
+     * Prints code writing the value of an element or type as a single field
+     */
+    void printWriteValueField(SchemaType valueType, int fieldNum, String accessCall, String outVar) throws IOException
+    {
+        if (isScalarValue(valueType))
+        {
+            String javaType = javaTypeForSchemaType(getContentType(valueType));
+            printWriteScalarField(javaType, fieldNum, accessCall, outVar, true);
+            return;
+        }
+
+        String writeMethod;
+        if (valueType.isDocumentType())
+            writeMethod = "write" + getSchemaComponentLocalName(valueType);
+        else
+        {
+            if (valueType.isAnonymousType() && !processedTypes.contains(valueType))
+                pendingTypes.add(valueType);
+            writeMethod = "write" + getSchemaComponentLocalName(valueType) + "Fields";
+        }
+
+        String bufName = nextBufferName();
+        String bindingsInstance = getBindingsVarName(valueType);
+        emit("ByteArrayOutputStream " + bufName + " = startMessage();");
+        emit(bindingsInstance + "." + writeMethod + "(" + bufName + ", " + accessCall + ");");
+        emit("endMessage(" + outVar + ", " + fieldNum + ", " + bufName + ");");
+    }
+
+
+    /**
+     * Prints code writing a simple value as a scalar field.<br/>
+     * Arrays are written as packed repeated fields or, if nested in another
+     * repeated field, a oneof or a property wrapper, as a message with a
+     * single packed field.
+     */
+    void printWriteScalarField(String javaType, int fieldNum, String accessCall, String outVar, boolean nested) throws IOException
+    {
+        if (javaType.endsWith("[]"))
+        {
+            String itemType = javaType.substring(0, javaType.length()-2);
+            if (nested)
+            {
+                String bufName = nextBufferName();
+                emit("ByteArrayOutputStream " + bufName + " = startMessage();");
+                printWritePackedField(itemType, 1, accessCall, bufName);
+                emit("endMessage(" + outVar + ", " + fieldNum + ", " + bufName + ");");
+            }
+            else
+                printWritePackedField(itemType, fieldNum, accessCall, outVar);
+            return;
+        }
+
+        String protoType = getProtoScalarType(javaType);
+        if (protoType.equals("string"))
+        {
+            if (!javaType.equals("String"))
+                accessCall = getTextValueWriteCall(javaType, accessCall);
+            emit("writeStringField(" + outVar + ", " + fieldNum + ", " + accessCall + ");");
+        }
+        else if (protoType.equals("double"))
+            emit("writeDoubleField(" + outVar + ", " + fieldNum + ", " + accessCall + ");");
+        else if (protoType.equals("float"))
+            emit("writeFloatField(" + outVar + ", " + fieldNum + ", " + accessCall + ");");
+        else if (protoType.equals("bool"))
+            emit("writeVarintField(" + outVar + ", " + fieldNum + ", " + accessCall + " ? 1 : 0);");
+        else
+            emit("writeVarintField(" + outVar + ", " + fieldNum + ", " + accessCall + ");");
+    }
+
+
+    void printWritePackedField(String itemType, int fieldNum, String accessCall, String outVar) throws IOException
+    {
+        String protoType = getProtoScalarType(itemType);
+
+        // strings cannot be packed
+        if (protoType.equals("string"))
+        {
+            emit("for (" + itemType + " v: " + accessCall + ")");
+            indent();
+            printWriteScalarField(itemType, fieldNum, "v", outVar, false);
+            outdent();
+        }
+
+        // fixed size values
+        else if (protoType.equals("double") || protoType.equals("float"))
+        {
+            boolean isDouble = protoType.equals("double");
+            emit("writeTag(" + outVar + ", " + fieldNum + ", WIRE_LEN);");
+            emit("writeVarint(" + outVar + ", " + (isDouble ? 8 : 4) + "L * " + accessCall + ".length);");
+            emit("for (" + itemType + " v: " + accessCall + ")");
+            indent();
+            if (isDouble)
+                emit("writeFixed64(" + outVar + ", Double.doubleToRawLongBits(v));");
+            else
+                emit("writeFixed32(" + outVar + ", Float.floatToRawIntBits(v));");
+            outdent();
+        }
+
+        // varints need to be encoded first to know the length
+        else
+        {
+            String bufName = nextBufferName();
+            emit("ByteArrayOutputStream " + bufName + " = startMessage();");
+            emit("for (" + itemType + " v: " + accessCall + ")");
+            indent();
+            if (protoType.equals("bool"))
+                emit("writeVarint(" + bufName + ", v ? 1 : 0);");
+            else
+                emit("writeVarint(" + bufName + ", v);");
+            outdent();
+            emit("endMessage(" + outVar + ", " + fieldNum + ", " + bufName + ");");
+        }
+    }
+
+
+    String nextBufferName()
+    {
+        return "buf" + (++bufCount);
+    }
+
+
+    /**
+     * Prints the low level protobuf encoding methods
+     */
+    void printProtobufWriterMethods() throws IOException
+    {
+        emit("");
+        emit("");
+        emit("static final int WIRE_VARINT = " + WIRE_VARINT + ", WIRE_I64 = " + WIRE_I64 + ", WIRE_LEN = " + WIRE_LEN + ", WIRE_I32 = " + WIRE_I32 + ";");
+        emit("");
+        emit("// scratch buffer used to encode varints and fixed size numbers");
+        emit("byte[] protoBuffer = new byte[10];");
+        emit("");
+        emit("// scratch buffers used to encode nested messages, indexed by nesting level");
+        emit("ByteArrayOutputStream[] messageBuffers = new ByteArrayOutputStream[8];");
+        emit("int messageDepth;");
+
+        printJavaDoc("Starts a nested message, whose length must be known before it is written");
+        emit("protected ByteArrayOutputStream startMessage()");
+        startBlock();
+        emit("if (messageDepth == messageBuffers.length)");
+        indent();
+        emit("messageBuffers = Arrays.copyOf(messageBuffers, messageDepth*2);");
+        outdent();
+        emit("");
+        emit("ByteArrayOutputStream buf = messageBuffers[messageDepth];");
+        emit("if (buf == null)");
+        indent();
+        emit("messageBuffers[messageDepth] = buf = new ByteArrayOutputStream(256);");
+        outdent();
+        emit("else");
+        indent();
+        emit("buf.reset();");
+        outdent();
+        emit("");
+        emit("messageDepth++;");
+        emit("return buf;");
+        endBlock();
+
+        printJavaDoc("Ends a nested message and writes it as a length delimited field");
+        emit("protected void endMessage(OutputStream out, int fieldNum, ByteArrayOutputStream buf) throws IOException");
+        startBlock();
+        emit("messageDepth--;");
+        emit("writeTag(out, fieldNum, WIRE_LEN);");
+        emit("writeVarint(out, buf.size());");
+        emit("buf.writeTo(out);");
+        endBlock();
+
+        printJavaDoc("Writes a field tag");
+        emit("protected void writeTag(OutputStream out, int fieldNum, int wireType) throws IOException");
+        startBlock();
+        emit("writeVarint(out, (fieldNum << 3) | wireType);");
+        endBlock();
+
+        printJavaDoc("Writes a base 128 varint, negative values being written on 10 bytes");
+        emit("protected void writeVarint(OutputStream out, long val) throws IOException");
+        startBlock();
+        emit("byte[] buf = protoBuffer;");
+        emit("int len = 0;");
+        emit("while ((val & ~0x7FL) != 0)");
+        startBlock();
+        emit("buf[len++] = (byte)((val & 0x7F) | 0x80);");
+        emit("val >>>= 7;");
+        endBlock();
+        emit("buf[len++] = (byte)val;");
+        emit("out.write(buf, 0, len);");
+        endBlock();
+
+        printJavaDoc("Writes a 32-bit little endian value");
+        emit("protected void writeFixed32(OutputStream out, int val) throws IOException");
+        startBlock();
+        emit("for (int i = 0; i < 4; i++, val >>>= 8)");
+        indent();
+        emit("protoBuffer[i] = (byte)val;");
+        outdent();
+        emit("out.write(protoBuffer, 0, 4);");
+        endBlock();
+
+        printJavaDoc("Writes a 64-bit little endian value");
+        emit("protected void writeFixed64(OutputStream out, long val) throws IOException");
+        startBlock();
+        emit("for (int i = 0; i < 8; i++, val >>>= 8)");
+        indent();
+        emit("protoBuffer[i] = (byte)val;");
+        outdent();
+        emit("out.write(protoBuffer, 0, 8);");
+        endBlock();
+
+        printJavaDoc("Writes an integer or boolean field");
+        emit("protected void writeVarintField(OutputStream out, int fieldNum, long val) throws IOException");
+        startBlock();
+        emit("writeTag(out, fieldNum, WIRE_VARINT);");
+        emit("writeVarint(out, val);");
+        endBlock();
+
+        printJavaDoc("Writes a double field");
+        emit("protected void writeDoubleField(OutputStream out, int fieldNum, double val) throws IOException");
+        startBlock();
+        emit("writeTag(out, fieldNum, WIRE_I64);");
+        emit("writeFixed64(out, Double.doubleToRawLongBits(val));");
+        endBlock();
+
+        printJavaDoc("Writes a float field");
+        emit("protected void writeFloatField(OutputStream out, int fieldNum, float val) throws IOException");
+        startBlock();
+        emit("writeTag(out, fieldNum, WIRE_I32);");
+        emit("writeFixed32(out, Float.floatToRawIntBits(val));");
+        endBlock();
+
+        printJavaDoc("Writes a string field");
+        emit("protected void writeStringField(OutputStream out, int fieldNum, String val) throws IOException");
+        startBlock();
+        emit("byte[] utf8 = val.getBytes(StandardCharsets.UTF_8);");
+        emit("writeTag(out, fieldNum, WIRE_LEN);");
+        emit("writeVarint(out, utf8.length);");
+        emit("out.write(utf8);");
+        endBlock();
+    }
+
+
+    /**
+     * Prints the low level protobuf decoding methods
+     */
+    void printProtobufReaderMethods() throws IOException
+    {
+        emit("");
+        emit("");
+        emit("// number of bytes read so far, used to find the end of nested messages");
+        emit("long inputPos;");
+        emit("");
+        emit("// scratch buffer used to decode strings");
+        emit("byte[] textBuffer = new byte[64];");
+
+        printJavaDoc("Reads one byte, failing at the end of the stream");
+        emit("protected int readByte(InputStream in) throws IOException");
+        startBlock();
+        emit("int b = in.read();");
+        emit("if (b < 0)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("inputPos++;");
+        emit("return b;");
+        endBlock();
+
+        printJavaDoc("Reads the next field tag, or returns 0 at the given position or at the end of the stream if there is no limit");
+        emit("protected int readTag(InputStream in, long limit) throws IOException");
+        startBlock();
+        emit("if (inputPos >= limit)");
+        indent();
+        emit("return 0;");
+        outdent();
+        emit("");
+        emit("int b = in.read();");
+        emit("if (b < 0)");
+        startBlock();
+        emit("if (limit != Long.MAX_VALUE)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("return 0;");
+        endBlock();
+        emit("");
+        emit("inputPos++;");
+        emit("return (int)readVarint(in, b);");
+        endBlock();
+
+        printJavaDoc("Checks the wire type of a field against the one it is written with");
+        emit("protected void checkWireType(int tag, int wireType) throws IOException");
+        startBlock();
+        emit("if ((tag & 7) != wireType)");
+        indent();
+        emit("throw new IOException(\"Unexpected wire type \" + (tag & 7) + \" for field \" + (tag >>> 3));");
+        outdent();
+        endBlock();
+
+        printJavaDoc("Reads a base 128 varint");
+        emit("protected long readVarint(InputStream in) throws IOException");
+        startBlock();
+        emit("return readVarint(in, readByte(in));");
+        endBlock();
+
+        emit("");
+        emit("");
+        emit("protected long readVarint(InputStream in, int b) throws IOException");
+        startBlock();
+        emit("long val = b & 0x7F;");
+        emit("for (int shift = 7; (b & 0x80) != 0; shift += 7)");
+        startBlock();
+        emit("if (shift > 63)");
+        indent();
+        emit("throw new IOException(\"Malformed varint\");");
+        outdent();
+        emit("b = readByte(in);");
+        emit("val |= (long)(b & 0x7F) << shift;");
+        endBlock();
+        emit("return val;");
+        endBlock();
+
+        printJavaDoc("Reads a 64-bit little endian value");
+        emit("protected long readFixed64(InputStream in) throws IOException");
+        startBlock();
+        emit("long val = 0;");
+        emit("for (int i = 0; i < 64; i += 8)");
+        indent();
+        emit("val |= (long)readByte(in) << i;");
+        outdent();
+        emit("return val;");
+        endBlock();
+
+        printJavaDoc("Reads a 32-bit little endian value");
+        emit("protected int readFixed32(InputStream in) throws IOException");
+        startBlock();
+        emit("int val = 0;");
+        emit("for (int i = 0; i < 32; i += 8)");
+        indent();
+        emit("val |= readByte(in) << i;");
+        outdent();
+        emit("return val;");
+        endBlock();
+
+        printJavaDoc("Reads a double value");
+        emit("protected double readDouble(InputStream in) throws IOException");
+        startBlock();
+        emit("return Double.longBitsToDouble(readFixed64(in));");
+        endBlock();
+
+        printJavaDoc("Reads a float value");
+        emit("protected float readFloat(InputStream in) throws IOException");
+        startBlock();
+        emit("return Float.intBitsToFloat(readFixed32(in));");
+        endBlock();
+
+        printJavaDoc("Reads the length of a length delimited field and returns the position where it ends");
+        emit("protected long readLimit(InputStream in) throws IOException");
+        startBlock();
+        emit("long length = readVarint(in);");
+        emit("if (length < 0 || length > Integer.MAX_VALUE)");
+        indent();
+        emit("throw new IOException(\"Invalid length: \" + length);");
+        outdent();
+        emit("return inputPos + length;");
+        endBlock();
+
+        printJavaDoc("Reads a string field value");
+        emit("protected String readString(InputStream in) throws IOException");
+        startBlock();
+        emit("int len = (int)(readLimit(in) - inputPos);");
+        emit("if (len > textBuffer.length)");
+        indent();
+        emit("textBuffer = new byte[Math.max(len, textBuffer.length * 2)];");
+        outdent();
+        emit("");
+        emit("for (int pos = 0; pos < len; )");
+        startBlock();
+        emit("int n = in.read(textBuffer, pos, len - pos);");
+        emit("if (n < 0)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("pos += n;");
+        endBlock();
+        emit("");
+        emit("inputPos += len;");
+        emit("return new String(textBuffer, 0, len, StandardCharsets.UTF_8);");
+        endBlock();
+
+        printJavaDoc("Skips the value of a field whose tag has been read");
+        emit("protected void skipField(InputStream in, int tag) throws IOException");
+        startBlock();
+        emit("long len;");
+        emit("switch (tag & 7)");
+        startBlock();
+        emit("case WIRE_VARINT:");
+        indent();
+        emit("readVarint(in);");
+        emit("return;");
+        outdent();
+        emit("case WIRE_I64:");
+        indent();
+        emit("len = 8;");
+        emit("break;");
+        outdent();
+        emit("case WIRE_I32:");
+        indent();
+        emit("len = 4;");
+        emit("break;");
+        outdent();
+        emit("case WIRE_LEN:");
+        indent();
+        emit("len = readLimit(in) - inputPos;");
+        emit("break;");
+        outdent();
+        emit("default:");
+        indent();
+        emit("throw new IOException(\"Unsupported wire type \" + (tag & 7) + \" for field \" + (tag >>> 3));");
+        outdent();
+        endBlock();
+        emit("");
+        emit("while (len > 0)");
+        startBlock();
+        emit("long n = in.skip(len);");
+        emit("if (n <= 0)");
+        startBlock();
+        emit("if (in.read() < 0)");
+        indent();
+        emit("throw new EOFException();");
+        outdent();
+        emit("n = 1;");
+        endBlock();
+        emit("inputPos += n;");
+        emit("len -= n;");
+        endBlock();
+        endBlock();
+
+        printJavaDoc("Fails on values of abstract types, whose messages don't say which concrete type to create");
+        emit("protected <T> T abstractValue(String typeName) throws IOException");
+        startBlock();
+        emit("throw new IOException(\"Cannot create object of abstract type \" + typeName);");
+        endBlock();
+    }
+
+
+    /**
+     * Prints methods reading arrays of the item types used by the read methods.<br/>
+     * Numbers are read from packed fields and strings from repeated fields.
+     * Arrays nested in other repeated fields, oneofs or property wrappers are
+     * read from a message holding them in field 1.
+     */
+    void printArrayReaderMethods() throws IOException
+    {
+        for (Entry<String, String> entry: arrayItemReadCalls.entrySet())
+        {
+            String itemType = entry.getKey();
+            String suffix = getArrayHelperSuffix(itemType);
+            boolean packed = !getProtoScalarType(itemType).equals("string");
+
+            printJavaDoc("Appends the " + itemType + " items of a " + (packed ? "packed" : "repeated") + " field to the given array, which can be null");
+            emit("protected " + itemType + "[] append" + suffix + "Items(InputStream in, " + itemType + "[] array) throws IOException");
+            startBlock();
+            emit("int n = (array == null) ? 0 : array.length;");
+            if (packed)
+            {
+                emit("long limit = readLimit(in);");
+                emit(itemType + "[] items = (array == null) ? new " + itemType + "[8] : Arrays.copyOf(array, n + 8);");
+                emit("while (inputPos < limit)");
+                startBlock();
+                emit("if (n == items.length)");
+                indent();
+                emit("items = Arrays.copyOf(items, n * 2);");
+                outdent();
+                emit("items[n++] = " + entry.getValue() + ";");
+                endBlock();
+                emit("return Arrays.copyOf(items, n);");
+            }
+            else
+            {
+                emit(itemType + "[] items = (array == null) ? new " + itemType + "[1] : Arrays.copyOf(array, n + 1);");
+                emit("items[n] = " + entry.getValue() + ";");
+                emit("return items;");
+            }
+            endBlock();
+
+            printJavaDoc("Reads a message holding an array of " + itemType + " items until the given position");
+            emit("protected " + itemType + "[] read" + suffix + "Array(InputStream in, long limit) throws IOException");
+            startBlock();
+            emit(itemType + "[] array = null;");
+            emit("int tag;");
+            emit("while ((tag = readTag(in, limit)) != 0)");
+            startBlock();
+            emit("if ((tag >>> 3) == 1 && (tag & 7) == WIRE_LEN)");
+            indent();
+            emit("array = append" + suffix + "Items(in, array);");
+            outdent();
+            emit("else");
+            indent();
+            emit("skipField(in, tag);");
+            outdent();
+            endBlock();
+            emit("");
+            emit("return (array != null) ? array : new " + itemType + "[0];");
+            endBlock();
+        }
+    }
+
+
+    /* **********************************/
+    /*         Utility Methods          */
+    /* **********************************/
+
+    public static String getBindingsFullClassName(String packageName)
+    {
+        return packageName + "." + BINDING_SUBPACKAGE_NAME + "." + BINDING_CLASS_NAME;
+    }
+
+}
@@ -6,9 +6,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import javax.xml.namespace.QName;
 import org.apache.xmlbeans.impl.common.NameUtil;
 import org.apache.xmlbeans.impl.schema.SchemaTypeImpl;
@@ -30,6 +32,8 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
     String _nsUri;
     List<SchemaType> processedTypes = new ArrayList<SchemaType>();    
     Map<String, String> bindingClasses = new LinkedHashMap<String, String>();
+    Set<String> entryPointNames = new LinkedHashSet<String>();
+    boolean usesEnumTextReader;
     
 
     public SchemaTypeReadWriteXMLPrinter(Writer fileWriter)
@@ -49,6 +53,9 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         emit("package " + _packageName + "." + BINDING_SUBPACKAGE_NAME + ";");
         
         emit("");
+        if (usesEnumTextReader)
+            emit("import java.util.Arrays;");
+        emit("import java.lang.invoke.MethodHandles;");
         emit("import java.util.Map;");
         emit("import javax.xml.stream.XMLStreamConstants;");
         emit("import javax.xml.stream.XMLStreamException;");
@@ -77,6 +84,8 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
                 emit("import " + OGC_PROP_PACKAGE_NAME + OGC_PROP_CLASS_NAME + ";");
         }
         emit("import " + _packageName + ".Factory;");
+        printMetricsImports();
+        printEventImports();
         
         emit("");
         emit("");
@@ -87,9 +96,26 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         // print factory var
         emit("Factory factory;");
+        emit("boolean trustedInput;");
         
         // constructor
         printConstructor(BINDING_CLASS_NAME);
+        printTrustedInputSetter();
+        printFreezeBeansSetter(bindingClasses.values());
+        printLookupMethod();
+        
+        // number formatting helpers
+        printDecimalWriterMethods();
+        
+        // enum text helpers
+        printEnumTextReaderMethods();
+        
+        // hot path metrics registry
+        printMetricsRegistry(_packageName + ":type=" + BINDING_CLASS_NAME);
+        
+        // JFR events
+        printEventStateVars(bindingClasses.values());
+        printEventClasses(_packageName, "Xml");
         
         _charBuffer.writeTo(_fileWriter);
         endBlock();
@@ -109,6 +135,17 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
     void printStaticFields(String nsUri) throws IOException
     {
         emit("public final static String NS_URI = \"" + nsUri + "\";");        
+        
+        // names of main read/write methods, so they can be told apart from helpers at runtime
+        emit("");
+        printShortJavaDoc("Names of elements and types with public read and write methods (see BindingsLoader)");
+        emit("public final static String[] ENTRY_POINTS =");
+        startBlock();
+        int i = 0;
+        for (String name: entryPointNames)
+            emit("\"" + name + "\"" + (++i < entryPointNames.size() ? "," : ""));
+        outdent();
+        emit("};");
     }
     
     
@@ -122,6 +159,46 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
     }
     
     
+    void printTrustedInputSetter() throws IOException
+    {
+        printJavaDoc("Enables the fast path skipping element name checks for documents already validated upstream",
+                new String[] {"trusted true to skip structural checks, false for strict mode (the default)"}, null, false);
+        emit("public void setTrustedInput(boolean trusted)");
+        startBlock();
+        emit("this.trustedInput = trusted;");
+        for (String varName: bindingClasses.values())
+            emit(varName + ".setTrustedInput(trusted);");
+        endBlock();
+    }
+    
+    
+    /**
+     * BindingsLoader needs a lookup with private access to this class to spin
+     * functions calling the read/write methods in the class loader of the bindings
+     */
+    void printLookupMethod() throws IOException
+    {
+        printJavaDoc("Gives BindingsLoader access to the read and write methods of bindings loaded at runtime",
+                null, "lookup object with private access to this class", false);
+        emit("public static MethodHandles.Lookup bindingsLookup()");
+        startBlock();
+        emit("return MethodHandles.lookup();");
+        endBlock();
+    }
+    
+    
+    /**
+     * In trusted mode, only the name comparison is skipped: the reader is always
+     * positioned with nextTag() before an element is checked, so there is nothing
+     * to skip and checking for a start tag is enough
+     * @return expression checking that the reader is on the given element
+     */
+    String getCheckElementCall(String eltName)
+    {
+        return "trustedInput ? reader.isStartElement() : checkElementName(reader, \"" + eltName + "\")";
+    }
+    
+    
     String getBindingsVarName(SchemaType sType)
     {
         if (sType.getShortJavaName().equals("Object") || sType.getFullJavaName().startsWith(_packageName))
@@ -164,6 +241,7 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         i = 1;
         for (Entry<String, String> dep: bindingClasses.entrySet())
             emit(dep.getValue() + " = new " + dep.getKey() + "(ns" + i++ + "Factory);");
+        printShareEventStateCall();
         endBlock();
     }
     
@@ -253,6 +331,7 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Dispatcher method for reading elements derived from " + eltName);
         emit("public " + javaTypeName + " read" + eltName + "(XMLStreamReader reader) throws XMLStreamException");
+        entryPointNames.add(eltName);
         
         startBlock();
         emit("String localName = reader.getName().getLocalPart();");
@@ -298,19 +377,29 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Read method for " + eltName + " elements");
         emit("public " + javaTypeName + " read" + eltName + "(XMLStreamReader reader) throws XMLStreamException");
+        entryPointNames.add(eltName);
         if (contentType.isSimpleType())
             javaTypeName = javaWrappedType(javaTypeName);
         
         startBlock();
+        printStartMetrics("reader.getLocation().getCharacterOffset()");
+        printStartEvent("XmlDecodeEvent");
         
-        // validate element name
-        emit("boolean found = checkElementName(reader, \"" + eltName + "\");");
+        // validate element name, or only that we are on a start tag if input is trusted
+        emit("boolean found = " + getCheckElementCall(eltName) + ";");
         emit("if (!found)");
         indent();
         emit("throw new XMLStreamException(ERROR_INVALID_ELT + reader.getName() + errorLocationString(reader));");
         outdent();
         
-        if (contentType.isSimpleType())
+        if (isEnumType(contentType))
+        {
+            // case of enum value, looked up without building a String
+            emit("");
+            emit("readElementChars(reader);"); // this positions us on end tag
+            emit("return " + getEnumFromCharsCall(contentType) + ";");
+        }
+        else if (contentType.isSimpleType())
         {
             // case of inline value
             emit("");
@@ -331,6 +420,8 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
             printCallReadType(contentType);
         }
         
+        printEndEvent(eltName);
+        printEndMetrics(eltName, "recordRead", "reader.getLocation().getCharacterOffset()");
         endBlock();
     }
     
@@ -342,8 +433,10 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Read method for " + complexTypeName + " complex type");
         emit("public " + javaTypeName + " read" + complexTypeName + "(XMLStreamReader reader) throws XMLStreamException");
+        entryPointNames.add(complexTypeName);
         
         startBlock();
+        printStartBeanEvent();
         
         //emit(javaTypeName + " bean = new " + sType.getShortJavaImplName() + "();");
         emit(javaTypeName + " bean = factory.new" + sType.getShortJavaName() + "();");
@@ -375,8 +468,10 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         }
         
         emit("");
+        printFreezeBean();
         emit("return bean;");
         
+        printEndBeanEvent();
         endBlock();
     }
     
@@ -423,6 +518,78 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
     }
     
     
+    boolean isEnumType(SchemaType sType)
+    {
+        return sType.isSimpleType() && sType.hasStringEnumValues();
+    }
+    
+    
+    String getEnumFromCharsCall(SchemaType sType)
+    {
+        usesEnumTextReader = true;
+        addUsedJavaType(sType.getFullJavaName());
+        return sType.getShortJavaName() + ".fromChars(textBuffer, 0, textLength)";
+    }
+    
+    
+    /**
+     * Enum values are read by copying the text events of the element into a
+     * reusable buffer and looking up the constant with the generated fromChars()
+     * method, so that no String is built for each value
+     */
+    void printEnumTextReaderMethods() throws IOException
+    {
+        if (!usesEnumTextReader)
+            return;
+        
+        emit("");
+        emit("");
+        emit("// scratch buffer used to read enum values (bindings instances are not thread-safe)");
+        emit("char[] textBuffer = new char[64];");
+        emit("int textLength;");
+        
+        printJavaDoc("Copies the text content of the current element to the text buffer and positions the reader on the end tag");
+        emit("protected void readElementChars(XMLStreamReader reader) throws XMLStreamException");
+        startBlock();
+        emit("textLength = 0;");
+        emit("int eventType = reader.next();");
+        emit("while (eventType != XMLStreamConstants.END_ELEMENT)");
+        startBlock();
+        emit("if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA ||");
+        emit("    eventType == XMLStreamConstants.SPACE)");
+        indent();
+        emit("appendText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());");
+        outdent();
+        emit("else if (eventType == XMLStreamConstants.ENTITY_REFERENCE)");
+        startBlock();
+        emit("String text = reader.getText();");
+        emit("appendText(text.toCharArray(), 0, text.length());");
+        endBlock();
+        emit("else if (eventType == XMLStreamConstants.START_ELEMENT)");
+        indent();
+        emit("throw new XMLStreamException(\"Element text only expected\" + errorLocationString(reader));");
+        outdent();
+        emit("else if (eventType == XMLStreamConstants.END_DOCUMENT)");
+        indent();
+        emit("throw new XMLStreamException(\"Unexpected end of document\" + errorLocationString(reader));");
+        outdent();
+        emit("eventType = reader.next();");
+        endBlock();
+        endBlock();
+        
+        printJavaDoc("Appends characters to the text buffer, growing it if needed");
+        emit("protected void appendText(char[] chars, int start, int length)");
+        startBlock();
+        emit("if (textLength + length > textBuffer.length)");
+        indent();
+        emit("textBuffer = Arrays.copyOf(textBuffer, Math.max(textBuffer.length * 2, textLength + length));");
+        outdent();
+        emit("System.arraycopy(chars, start, textBuffer, textLength, length);");
+        emit("textLength += length;");
+        endBlock();
+    }
+    
+    
     String getValueConversionCall(SchemaType sType, String javaType)
     {
         String valConversion = "val";
@@ -558,7 +725,11 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
                 startBlock();
             }
                 
-            emit("found = checkElementName(reader, \"" + eltName + "\");");
+            // mandatory elements are always present in trusted input
+            if (!sProp.extendsJavaArray() && sProp.getMinOccurs().signum() > 0)
+                emit("found = " + getCheckElementCall(eltName) + ";");
+            else
+                emit("found = checkElementName(reader, \"" + eltName + "\");");
             emit("if (found)");
             startBlock();
             printReadSingleProperty(sProp);            
@@ -652,6 +823,13 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
             }
         }
         
+        // case of enum value, looked up without building a String
+        else if (isEnumType(sProp.getType()))
+        {
+            emit("readElementChars(reader);"); // this positions us on end tag
+            emit("bean." + setter + "(" + getEnumFromCharsCall(sProp.getType()) + ");");
+        }
+        
         // case of inline value
         else
         {
@@ -717,6 +895,7 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Dispatcher method for writing classes derived from " + eltName);
         emit("public void write" + eltName + "(XMLStreamWriter writer, " + javaTypeName + " bean) throws XMLStreamException");
+        entryPointNames.add(eltName);
         
         startBlock();
         
@@ -767,8 +946,11 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Write method for " + eltName + " element");
         emit("public void write" + eltName + "(XMLStreamWriter writer, " + javaTypeName + " bean) throws XMLStreamException");
+        entryPointNames.add(eltName);
         
-        startBlock();        
+        startBlock();
+        printStartMetrics(null);
+        printStartEvent("XmlEncodeEvent");
         emit("writer.writeStartElement(NS_URI, \"" + eltName + "\");");
         
         // add namespace declarations if needed
@@ -777,19 +959,16 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         if (contentType.isSimpleType())
         {
             // write inline value
-            String getStringCall;
-            if (javaTypeForSchemaType(contentType).equals(String.class.getSimpleName()))
-                getStringCall = "bean";
-            else
-                getStringCall = "getStringValue(bean)";
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForSchemaType(contentType), "bean");
         }
         else
         {
             printCallWriteType(contentType);
         }
         
-        emit("writer.writeEndElement();");        
+        emit("writer.writeEndElement();");
+        printEndEvent(eltName);
+        printEndMetrics(eltName, "recordWrite", null);
         endBlock();        
     }
     
@@ -801,8 +980,10 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         
         printJavaDoc("Write method for " + complexTypeName + " complex type");
         emit("public void write" + complexTypeName + "(XMLStreamWriter writer, " + javaTypeName + " bean) throws XMLStreamException");
+        entryPointNames.add(complexTypeName);
         
         startBlock();
+        printStartBeanEvent();
         
         if (hasAttributes(sType))
             printCallWriteAttributes(sType);
@@ -815,10 +996,10 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         else if (hasTextValue(sType))
         {
             emit("");
-            String getStringCall = "getStringValue(bean.getValue())";
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForSchemaType(sType.getBaseType()), "bean.getValue()");
         }
         
+        printEndBeanEvent();
         endBlock();
     }
     
@@ -1076,10 +1257,7 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
         else
         {
             // case of inline value
-            String getStringCall = "getStringValue(" + accessCall + ")";
-            if (javaTypeForProperty(sProp).equals(String.class.getSimpleName()))
-                getStringCall = accessCall;
-            emit("writer.writeCharacters(" + getStringCall + ");");
+            printWriteTextValue(javaTypeForProperty(sProp), accessCall);
         }
         
         emit("writer.writeEndElement();");
@@ -1100,7 +1278,7 @@ public final class SchemaTypeReadWriteXMLPrinter extends AbstractCodePrinter
     {
         String propType = javaTypeForProperty(sProp);
         addUsedJavaType(javaFullTypeForProperty(sProp));
-        String getListCall = "bean.get" + sProp.getJavaPropertyName() + "List()";
+        String getListCall = printListVariable(sProp);
         emit("numItems = " + getListCall + ".size();");
         emit("for (int i = 0; i < numItems; i++)");
         startBlock();
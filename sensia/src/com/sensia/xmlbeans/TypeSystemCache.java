@@ -0,0 +1,459 @@
+package com.sensia.xmlbeans;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.xmlbeans.BindingConfig;
+import org.apache.xmlbeans.Filer;
+import org.apache.xmlbeans.SystemProperties;
+import org.apache.xmlbeans.UserType;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.XmlError;
+import org.apache.xmlbeans.XmlOptions;
+import org.apache.xmlbeans.impl.schema.SchemaTypeSystemImpl;
+import org.apache.xmlbeans.impl.xb.xsdschema.ImportDocument.Import;
+import org.apache.xmlbeans.impl.xb.xsdschema.IncludeDocument.Include;
+import org.apache.xmlbeans.impl.xb.xsdschema.RedefineDocument.Redefine;
+import org.apache.xmlbeans.impl.xb.xsdschema.SchemaDocument.Schema;
+
+
+/**
+ * On-disk cache of compiled schema type systems.<br/>
+ * Entries are keyed by a SHA-256 digest of the generator and XmlBeans versions,
+ * of the compile options, of the content of all schema documents given to the
+ * compiler and of the binding config, and hold the binary files saved by
+ * {@link SchemaTypeSystemImpl#save(Filer)}.<br/>
+ * Schemas importing namespaces that are not compiled with them resolve types
+ * through the linkTo type loader, which cannot be part of the key, so such
+ * compilations are never cached. Neither are compilations of schemas that
+ * include, redefine or import documents that are not among the given schemas,
+ * because the importer would load these documents after the key is computed.<br/>
+ * Warnings reported while compiling are saved with each entry and reported
+ * again when the entry is loaded, since loading skips schema validation.<br/>
+ * The cache is enabled by setting the {@value #CACHE_DIR_PROPERTY} system property.
+ */
+public class TypeSystemCache
+{
+    public static final String CACHE_DIR_PROPERTY = "swe.codegen.cacheDir";
+    static final String NAME_FILE = "sts.name";
+    static final String WARNINGS_FILE = "sts.warnings";
+
+    /**
+     * Version of the cache entry format and of the compiler patches in this
+     * project. Increment it when either changes so older entries are not reused.
+     */
+    static final int GENERATOR_VERSION = 2;
+
+    // options read by the schema compiler that change the compiled type system
+    static final String[] KEY_OPTIONS = {
+        XmlOptions.COMPILE_NO_VALIDATION,
+        XmlOptions.COMPILE_NO_UPA_RULE,
+        XmlOptions.COMPILE_NO_PVR_RULE,
+        XmlOptions.COMPILE_NO_ANNOTATIONS,
+        XmlOptions.COMPILE_DOWNLOAD_URLS,
+        XmlOptions.COMPILE_PARTIAL_TYPESYSTEM,
+        XmlOptions.COMPILE_MDEF_NAMESPACES,
+        XmlOptions.COMPILE_SUBSTITUTE_NAMES,
+        XmlOptions.VALIDATE_TREAT_LAX_AS_SKIP,
+        XmlOptions.BASE_URI
+    };
+
+    static final Set<String> BUILTIN_NAMESPACES = new HashSet<String>();
+    static
+    {
+        BUILTIN_NAMESPACES.add("http://www.w3.org/2001/XMLSchema");
+        BUILTIN_NAMESPACES.add("http://www.w3.org/XML/1998/namespace");
+    }
+
+    File cacheDir;
+
+
+    /**
+     * @return the cache configured by system properties, or null if caching is disabled
+     */
+    public static TypeSystemCache getInstance()
+    {
+        String dir = SystemProperties.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.length() == 0)
+            return null;
+        return new TypeSystemCache(new File(dir));
+    }
+
+
+    public TypeSystemCache(File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+
+    /**
+     * Computes the cache key for a compilation
+     * @param name type system name, or null
+     * @param schemas all schema documents to compile
+     * @param config binding config, or null
+     * @param options compile options
+     * @return hex encoded digest, or null if this compilation cannot be cached
+     */
+    public String computeKey(String name, Schema[] schemas, BindingConfig config, XmlOptions options)
+    {
+        if (dependsOnLinkTo(schemas) || referencesOtherDocuments(schemas))
+            return null;
+
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            update(md, Integer.toString(GENERATOR_VERSION));
+            update(md, XmlBeans.getVersion());
+            update(md, name);
+
+            for (String option: KEY_OPTIONS)
+            {
+                update(md, option);
+                update(md, toKeyString(options.get(option)));
+            }
+
+            for (Schema schema: schemas)
+            {
+                update(md, schema.documentProperties().getSourceName());
+                update(md, schema.xmlText());
+
+                // package mapping of each namespace
+                if (config != null)
+                {
+                    String ns = schema.getTargetNamespace();
+                    update(md, config.lookupPackageForNamespace(ns));
+                    update(md, config.lookupPrefixForNamespace(ns));
+                    update(md, config.lookupSuffixForNamespace(ns));
+                }
+            }
+
+            if (config != null)
+            {
+                for (UserType userType: config.getUserTypes())
+                {
+                    update(md, userType.getName().toString());
+                    update(md, userType.getJavaName());
+                }
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b: md.digest())
+                hex.append(String.format("%02x", b & 0xFF));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * @return true if the schemas import namespaces they don't define, whose
+     * types are then resolved by the linkTo type loader
+     */
+    boolean dependsOnLinkTo(Schema[] schemas)
+    {
+        Set<String> namespaces = new HashSet<String>();
+        for (Schema schema: schemas)
+            namespaces.add(schema.getTargetNamespace() != null ? schema.getTargetNamespace() : "");
+
+        for (Schema schema: schemas)
+        {
+            for (Import imp: schema.getImportArray())
+            {
+                String ns = imp.getNamespace() != null ? imp.getNamespace() : "";
+                if (!namespaces.contains(ns) && !BUILTIN_NAMESPACES.contains(ns))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return true if the schemas include, redefine or import documents by
+     * location that are not among the given schemas, or whose location
+     * cannot be resolved against the source name of the referencing schema
+     */
+    boolean referencesOtherDocuments(Schema[] schemas)
+    {
+        Set<URI> sources = new HashSet<URI>();
+        for (Schema schema: schemas)
+        {
+            URI source = getSourceURI(schema);
+            if (source != null)
+                sources.add(source);
+        }
+
+        for (Schema schema: schemas)
+        {
+            List<String> locations = new ArrayList<String>();
+            for (Include include: schema.getIncludeArray())
+                locations.add(include.getSchemaLocation());
+            for (Redefine redefine: schema.getRedefineArray())
+                locations.add(redefine.getSchemaLocation());
+            for (Import imp: schema.getImportArray())
+            {
+                if (imp.getSchemaLocation() != null)
+                    locations.add(imp.getSchemaLocation());
+            }
+
+            if (locations.isEmpty())
+                continue;
+
+            URI source = getSourceURI(schema);
+            if (source == null)
+                return true;
+
+            for (String location: locations)
+            {
+                try
+                {
+                    if (!sources.contains(source.resolve(new URI(location)).normalize()))
+                        return true;
+                }
+                catch (URISyntaxException e)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return absolute URI of the document the schema was parsed from, or null if unknown
+     */
+    URI getSourceURI(Schema schema)
+    {
+        String sourceName = schema.documentProperties().getSourceName();
+        if (sourceName == null)
+            return null;
+
+        try
+        {
+            URI uri = new URI(sourceName);
+            if (uri.isAbsolute() && uri.getScheme().length() > 1)
+                return uri.normalize();
+        }
+        catch (URISyntaxException e)
+        {
+            // not a URI, so a file path
+        }
+
+        return new File(sourceName).getAbsoluteFile().toURI().normalize();
+    }
+
+
+    /**
+     * @return string form of an option value that doesn't depend on the iteration order of sets and maps
+     */
+    String toKeyString(Object value)
+    {
+        if (value instanceof Map)
+        {
+            TreeSet<String> entries = new TreeSet<String>();
+            for (Object entry: ((Map<?,?>)value).entrySet())
+                entries.add(String.valueOf(entry));
+            return entries.toString();
+        }
+        else if (value instanceof Collection)
+        {
+            TreeSet<String> items = new TreeSet<String>();
+            for (Object item: (Collection<?>)value)
+                items.add(String.valueOf(item));
+            return items.toString();
+        }
+        else
+            return value != null ? value.toString() : null;
+    }
+
+
+    void update(MessageDigest md, String s)
+    {
+        if (s != null)
+            md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte)0);
+    }
+
+
+    /**
+     * Wraps the error listener of a compilation to keep the warnings to save with the entry
+     * @param errorListener user error listener, or null
+     * @param warnings list receiving the warnings
+     * @return collection forwarding all errors to the user error listener
+     */
+    public static Collection<Object> recordWarnings(final Collection<Object> errorListener, final List<XmlError> warnings)
+    {
+        return new AbstractCollection<Object>()
+        {
+            @Override
+            public boolean add(Object o)
+            {
+                if (o instanceof XmlError && ((XmlError)o).getSeverity() != XmlError.SEVERITY_ERROR)
+                    warnings.add((XmlError)o);
+                return errorListener == null || errorListener.add(o);
+            }
+
+            @Override
+            public Iterator<Object> iterator()
+            {
+                return errorListener != null ? errorListener.iterator() : new ArrayList<Object>().iterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return errorListener != null ? errorListener.size() : 0;
+            }
+        };
+    }
+
+
+    /**
+     * Loads a previously compiled type system and reports the warnings saved with it
+     * @param key cache key
+     * @param errorListener error listener receiving the saved warnings, or null
+     * @return the cached type system or null if not in cache or not loadable
+     */
+    public SchemaTypeSystemImpl load(String key, Collection<Object> errorListener)
+    {
+        File entryDir = new File(cacheDir, key);
+        File nameFile = new File(entryDir, NAME_FILE);
+        if (!nameFile.exists())
+            return null;
+
+        try
+        {
+            String stsName = new String(Files.readAllBytes(nameFile.toPath()), StandardCharsets.UTF_8);
+            ClassLoader parent = TypeSystemCache.class.getClassLoader();
+            URLClassLoader loader = new URLClassLoader(new URL[] {entryDir.toURI().toURL()}, parent);
+            SchemaTypeSystemImpl sts = (SchemaTypeSystemImpl)XmlBeans.typeSystemForClassLoader(loader, stsName);
+
+            List<XmlError> warnings = loadWarnings(new File(entryDir, WARNINGS_FILE));
+            if (errorListener != null)
+            {
+                errorListener.add(XmlError.forMessage("Loaded compiled type system from cache " + entryDir, XmlError.SEVERITY_INFO));
+                errorListener.addAll(warnings);
+            }
+
+            return sts;
+        }
+        catch (Exception e)
+        {
+            if (errorListener != null)
+                errorListener.add(XmlError.forMessage("Cannot load cached type system " + entryDir + ": " + e, XmlError.SEVERITY_WARNING));
+            return null;
+        }
+    }
+
+
+    List<XmlError> loadWarnings(File file) throws IOException
+    {
+        List<XmlError> warnings = new ArrayList<XmlError>();
+        try (DataInputStream is = new DataInputStream(new FileInputStream(file)))
+        {
+            int count = is.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                int severity = is.readInt();
+                String message = is.readUTF();
+                String sourceName = is.readBoolean() ? is.readUTF() : null;
+                int line = is.readInt();
+                int column = is.readInt();
+                int offset = is.readInt();
+                warnings.add(XmlError.forLocation(message, severity, sourceName, line, column, offset));
+            }
+        }
+        return warnings;
+    }
+
+
+    void saveWarnings(File file, List<XmlError> warnings) throws IOException
+    {
+        try (DataOutputStream os = new DataOutputStream(new FileOutputStream(file)))
+        {
+            os.writeInt(warnings.size());
+            for (XmlError warning: warnings)
+            {
+                os.writeInt(warning.getSeverity());
+                os.writeUTF(String.valueOf(warning.getMessage()));
+                os.writeBoolean(warning.getSourceName() != null);
+                if (warning.getSourceName() != null)
+                    os.writeUTF(warning.getSourceName());
+                os.writeInt(warning.getLine());
+                os.writeInt(warning.getColumn());
+                os.writeInt(warning.getOffset());
+            }
+        }
+    }
+
+
+    /**
+     * Saves a compiled type system in the cache
+     * @param key cache key
+     * @param sts compiled type system
+     * @param warnings warnings reported while compiling the type system
+     * @param errorListener error listener receiving cache write failures, or null
+     */
+    public void store(String key, SchemaTypeSystemImpl sts, List<XmlError> warnings, Collection<Object> errorListener)
+    {
+        final File entryDir = new File(cacheDir, key);
+
+        try
+        {
+            sts.save(new Filer()
+            {
+                @Override
+                public OutputStream createBinaryFile(String typename) throws IOException
+                {
+                    File file = new File(entryDir, typename);
+                    file.getParentFile().mkdirs();
+                    return new FileOutputStream(file);
+                }
+
+                @Override
+                public Writer createSourceFile(String typename) throws IOException
+                {
+                    throw new IOException("Cannot save source files to type system cache");
+                }
+            });
+
+            saveWarnings(new File(entryDir, WARNINGS_FILE), warnings);
+
+            // name file is written last so incomplete entries are never loaded
+            Files.write(new File(entryDir, NAME_FILE).toPath(), sts.getName().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (Exception e)
+        {
+            if (errorListener != null)
+                errorListener.add(XmlError.forMessage("Cannot save type system to cache " + entryDir + ": " + e, XmlError.SEVERITY_WARNING));
+        }
+    }
+}
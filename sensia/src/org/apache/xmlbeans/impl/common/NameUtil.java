@@ -18,6 +18,7 @@ package org.apache.xmlbeans.impl.common;
 import javax.xml.namespace.QName;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NameUtil
 {
@@ -324,9 +325,30 @@ public class NameUtil
         return true;
     }
 
+    // bounded caches for the most frequently called conversions
+    // these are pure functions so cached results can be shared between threads
+    // a full cache is cleared rather than kept in access order, so lookups never take a lock
+    private static final int NAME_CACHE_SIZE = 4096;
+    private static final Map classNameCache = new ConcurrentHashMap(256);
+    private static final Map packageCache = new ConcurrentHashMap(256);
+    private static final Map upperCamelCaseCache = new ConcurrentHashMap(256);
+
+    private static void putInNameCache(Map cache, Object key, Object value)
+    {
+        if (cache.size() >= NAME_CACHE_SIZE)
+            cache.clear();
+        cache.put(key, value);
+    }
+
     public static String getClassNameFromQName(QName qname)
     {
-        return getClassNameFromQName(qname, false);
+        String className = (String)classNameCache.get(qname);
+        if (className == null)
+        {
+            className = getClassNameFromQName(qname, false);
+            putInNameCache(classNameCache, qname, className);
+        }
+        return className;
     }
 
     public static String getClassNameFromQName(QName qname, boolean useJaxRpcRules)
@@ -471,7 +493,16 @@ public class NameUtil
 
     public static String getPackageFromNamespace(String uri)
     {
-        return getPackageFromNamespace(uri, false);
+        if (uri == null)
+            return getPackageFromNamespace(uri, false);
+
+        String pkg = (String)packageCache.get(uri);
+        if (pkg == null)
+        {
+            pkg = getPackageFromNamespace(uri, false);
+            putInNameCache(packageCache, uri, pkg);
+        }
+        return pkg;
     }
 
     public static String getPackageFromNamespace(String uri, boolean useJaxRpcRules)
@@ -586,7 +617,13 @@ public class NameUtil
      */
     public static String upperCamelCase(String xml_name)
     {
-        return upperCamelCase(xml_name, false);
+        String name = (String)upperCamelCaseCache.get(xml_name);
+        if (name == null)
+        {
+            name = upperCamelCase(xml_name, false);
+            putInNameCache(upperCamelCaseCache, xml_name, name);
+        }
+        return name;
     }
 
     /**
@@ -33,10 +33,17 @@ import java.util.Map;
 import java.util.List;
 import java.util.Set;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.net.URI;
 
 import org.apache.xmlbeans.impl.xb.xsdschema.SchemaDocument.Schema;
+import com.sensia.xmlbeans.GeneratorProfiler;
 import com.sensia.xmlbeans.MySchemaTypeSystemCompiler;
+import com.sensia.xmlbeans.TypeSystemCache;
 import org.apache.xmlbeans.impl.xb.xsdschema.SchemaDocument;
 import org.apache.xmlbeans.impl.common.XmlErrorWatcher;
 
@@ -214,22 +221,64 @@ public class SchemaTypeSystemCompiler
         }
 
         Collection userErrors = (Collection)options.get(XmlOptions.ERROR_LISTENER);
-        XmlErrorWatcher errorWatcher = new XmlErrorWatcher(userErrors);
+        Schema[] schemasArray = (Schema[])schemas.toArray(new Schema[schemas.size()]);
 
-        SchemaTypeSystemImpl stsi = compileImpl(existingSTS, name,
-            (Schema[])schemas.toArray(new Schema[schemas.size()]),
-            config, linkTo, options, errorWatcher, filer!=null, (URI) options.get(XmlOptions.BASE_URI),
-            null, null);
+        GeneratorProfiler profiler = GeneratorProfiler.getInstance();
+        long startTime = System.nanoTime();
 
-        // if there is an error and compile didn't recover (stsi==null), throw exception
-        if (errorWatcher.hasError() && stsi == null)
+        // try to reuse type system compiled by a previous run
+        SchemaTypeSystemImpl stsi = null;
+        TypeSystemCache cache = (existingSTS == null && filer != null) ? TypeSystemCache.getInstance() : null;
+        String cacheKey = null;
+        List cacheWarnings = null;
+        if (cache != null)
         {
-            throw new XmlException(errorWatcher.firstError());
+            cacheKey = cache.computeKey(name, schemasArray, config, options);
+            if (cacheKey == null)
+                cache = null;
+        }
+
+        XmlErrorWatcher errorWatcher;
+        if (cache != null)
+        {
+            // keep warnings so they can be reported again when the entry is reused
+            cacheWarnings = new ArrayList();
+            errorWatcher = new XmlErrorWatcher(TypeSystemCache.recordWarnings(userErrors, cacheWarnings));
+            stsi = cache.load(cacheKey, errorWatcher);
+            cacheWarnings.clear();
+            if (profiler != null)
+                startTime = profiler.recordPhase("cacheLoad", startTime);
+        }
+        else
+            errorWatcher = new XmlErrorWatcher(userErrors);
+
+        if (stsi == null)
+        {
+            stsi = compileImpl(existingSTS, name, schemasArray,
+                config, linkTo, options, errorWatcher, filer!=null, (URI) options.get(XmlOptions.BASE_URI),
+                null, null);
+
+            // if there is an error and compile didn't recover (stsi==null), throw exception
+            if (errorWatcher.hasError() && stsi == null)
+            {
+                throw new XmlException(errorWatcher.firstError());
+            }
+
+            if (cache != null && !errorWatcher.hasError() && !stsi.isIncomplete())
+            {
+                startTime = System.nanoTime();
+                cache.store(cacheKey, stsi, cacheWarnings, errorWatcher);
+                if (profiler != null)
+                    profiler.recordPhase("cacheStore", startTime);
+            }
         }
 
         if (stsi != null && !stsi.isIncomplete() && filer != null)
         {
+            startTime = System.nanoTime();
             stsi.save(filer);
+            if (profiler != null)
+                profiler.recordPhase("save", startTime);
             generateTypes(stsi, filer, options);
         }
 
@@ -252,6 +301,8 @@ public class SchemaTypeSystemCompiler
 
         // construct the state
         StscState state = StscState.start();
+        GeneratorProfiler profiler = GeneratorProfiler.getInstance();
+        long startTime = System.nanoTime();
         boolean validate = (options == null || !options.hasOption(XmlOptions.COMPILE_NO_VALIDATION));
         try
         {
@@ -272,14 +323,9 @@ public class SchemaTypeSystemCompiler
             // load all the xsd files into it
             if (validate)
             {
-                XmlOptions validateOptions = new XmlOptions().setErrorListener(errorWatcher);
-                if (options.hasOption(XmlOptions.VALIDATE_TREAT_LAX_AS_SKIP))
-                    validateOptions.setValidateTreatLaxAsSkip();
-                for (int i = 0; i < schemas.length; i++)
-                {
-                    if (schemas[i].validate(validateOptions))
-                        validSchemas.add(schemas[i]);
-                }
+                validSchemas.addAll(validateSchemas(schemas, options, errorWatcher));
+                if (profiler != null)
+                    startTime = profiler.recordPhase("validate", startTime);
             }
             else
             {
@@ -301,21 +347,33 @@ public class SchemaTypeSystemCompiler
 
             // deal with imports and includes
             StscImporter.SchemaToProcess[] schemasAndChameleons = StscImporter.resolveImportsAndIncludes(startWith, incremental);
+            if (profiler != null)
+                startTime = profiler.recordPhase("import", startTime);
 
             // call the translator so that it may also perform magic
             StscTranslator.addAllDefinitions(schemasAndChameleons);
+            if (profiler != null)
+                startTime = profiler.recordPhase("translate", startTime);
 
             // call the resolver to do its magic
             StscResolver.resolveAll();
+            if (profiler != null)
+                startTime = profiler.recordPhase("resolve", startTime);
             
             // call the checker to check both restrictions and defaults
             StscChecker.checkAll();
+            if (profiler != null)
+                startTime = profiler.recordPhase("check", startTime);
 
             // call the javaizer to do its magic
             StscJavaizer.javaizeAllTypes(javaize);
+            if (profiler != null)
+                startTime = profiler.recordPhase("javaize", startTime);
 
             // construct the loader out of the state
             state.get().sts().loadFromStscState(state);
+            if (profiler != null)
+                startTime = profiler.recordPhase("load", startTime);
 
             // fill in the source-copy map
             if (sourcesToCopyMap != null)
@@ -347,6 +405,75 @@ public class SchemaTypeSystemCompiler
         }
     }
 
+    /**
+     * Validates schema documents in parallel.
+     * Each document is validated with its own error list, and errors are
+     * then reported to the error watcher in the order of the documents, so
+     * the result is the same as with sequential validation.
+     */
+    private static List validateSchemas(final Schema[] schemas, final XmlOptions options, XmlErrorWatcher errorWatcher)
+    {
+        List validSchemas = new ArrayList(schemas.length);
+        int numThreads = Math.min(schemas.length, Runtime.getRuntime().availableProcessors());
+        if (numThreads < 1)
+            return validSchemas;
+
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(schemas.length);
+            final List[] errors = new List[schemas.length];
+            for (int i = 0; i < schemas.length; i++)
+            {
+                final int index = i;
+                errors[i] = new ArrayList();
+                results.add(exec.submit(new Callable<Boolean>() {
+                    public Boolean call()
+                    {
+                        XmlOptions validateOptions = new XmlOptions().setErrorListener(errors[index]);
+                        if (options.hasOption(XmlOptions.VALIDATE_TREAT_LAX_AS_SKIP))
+                            validateOptions.setValidateTreatLaxAsSkip();
+                        return schemas[index].validate(validateOptions);
+                    }
+                }));
+            }
+
+            // merge results in deterministic order
+            for (int i = 0; i < schemas.length; i++)
+            {
+                boolean valid = getValidationResult(results.get(i));
+                errorWatcher.addAll(errors[i]);
+                if (valid)
+                    validSchemas.add(schemas[i]);
+            }
+        }
+        finally
+        {
+            exec.shutdownNow();
+        }
+
+        return validSchemas;
+    }
+
+    private static boolean getValidationResult(Future<Boolean> result)
+    {
+        try
+        {
+            return result.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating schemas", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     /**
      * Get the list of Schemas to be recompiled, based on the list of Schemas that
      * were modified.
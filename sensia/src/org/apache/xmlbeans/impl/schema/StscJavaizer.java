@@ -31,8 +31,14 @@ import org.apache.xmlbeans.InterfaceExtension;
 import org.apache.xmlbeans.XmlError;
 import org.apache.xmlbeans.PrePostExtension;
 import org.apache.xmlbeans.BindingConfig;
+import org.apache.xmlbeans.SystemProperties;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.math.BigInteger;
 
 import javax.xml.namespace.QName;
@@ -46,6 +52,11 @@ public class StscJavaizer
      * xmlbeans scomp will fail with a code too large error
      */
     private static final int MAX_ENUM_COUNT = 3668;
+
+    /**
+     * Javaize types on several threads (see {@link #javaizeAllTypesParallel})
+     */
+    static final boolean PARALLEL_JAVAIZE = Boolean.valueOf(SystemProperties.getProperty("swe.codegen.parallelJavaize")).booleanValue();
     /**
      * Does a topo walk of all the types to resolve them.
      */
@@ -62,7 +73,13 @@ public class StscJavaizer
         if (javaize)
             assignGlobalJavaNames(allSeenTypes);
 
-        // now fully javaize everything deeply.
+        // now fully javaize everything deeply, in parallel if enabled
+        if (javaize && PARALLEL_JAVAIZE)
+        {
+            javaizeAllTypesParallel(allSeenTypes, state);
+            return;
+        }
+
         for (int i = 0; i < allSeenTypes.size(); i++)
         {
             SchemaType gType = (SchemaType)allSeenTypes.get(i);
@@ -84,6 +101,111 @@ public class StscJavaizer
         }
     }
 
+    /**
+     * Javaizes all types using a pool of threads.
+     * Types are processed in waves so that a type is only javaized once its
+     * base type, content-based-on type and outer type (that assigns its java
+     * name) are done. Class names are then registered serially in the same
+     * order as the sequential traversal.
+     */
+    static void javaizeAllTypesParallel(List allSeenTypes, final StscState state)
+    {
+        // collect all types in same order as sequential traversal,
+        // together with the type responsible for naming anonymous types
+        Map namingTypes = new IdentityHashMap();
+        for (int i = 0; i < allSeenTypes.size(); i++)
+        {
+            SchemaType gType = (SchemaType)allSeenTypes.get(i);
+            int first = allSeenTypes.size();
+            allSeenTypes.addAll(Arrays.asList(gType.getAnonymousTypes()));
+            addAnonymousTypesFromRedefinition(gType, allSeenTypes);
+            for (int j = first; j < allSeenTypes.size(); j++)
+                namingTypes.put(allSeenTypes.get(j), gType);
+        }
+
+        // assign each type to a wave after all its dependencies
+        Map levels = new IdentityHashMap();
+        List waves = new ArrayList();
+        for (int i = 0; i < allSeenTypes.size(); i++)
+            computeJavaizeLevel((SchemaTypeImpl)allSeenTypes.get(i), namingTypes, levels, waves);
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            for (int w = 0; w < waves.size(); w++)
+            {
+                List wave = (List)waves.get(w);
+                List tasks = new ArrayList();
+                int chunkSize = Math.max(1, (wave.size() + numThreads - 1) / numThreads);
+                for (int start = 0; start < wave.size(); start += chunkSize)
+                {
+                    final List chunk = wave.subList(start, Math.min(start + chunkSize, wave.size()));
+                    tasks.add(new Callable() {
+                        public Object call()
+                        {
+                            for (int i = 0; i < chunk.size(); i++)
+                                javaizeType((SchemaTypeImpl)chunk.get(i), state);
+                            return null;
+                        }
+                    });
+                }
+
+                List results = exec.invokeAll(tasks);
+                for (int i = 0; i < results.size(); i++)
+                    ((Future)results.get(i)).get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while javaizing types", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        finally
+        {
+            exec.shutdownNow();
+        }
+
+        // deterministic merge of class names
+        for (int i = 0; i < allSeenTypes.size(); i++)
+        {
+            SchemaType gType = (SchemaType)allSeenTypes.get(i);
+            String className = gType.getFullJavaName();
+            if (className != null)
+                state.addClassname(className.replace('$', '.'), gType);
+        }
+    }
+
+    private static int computeJavaizeLevel(SchemaTypeImpl sImpl, Map namingTypes, Map levels, List waves)
+    {
+        if (sImpl == null || sImpl.isJavaized())
+            return -1;
+
+        Integer level = (Integer)levels.get(sImpl);
+        if (level != null)
+            return level.intValue();
+
+        int maxDep = computeJavaizeLevel((SchemaTypeImpl)sImpl.getBaseType(), namingTypes, levels, waves);
+        maxDep = Math.max(maxDep, computeJavaizeLevel((SchemaTypeImpl)sImpl.getContentBasedOnType(), namingTypes, levels, waves));
+        maxDep = Math.max(maxDep, computeJavaizeLevel((SchemaTypeImpl)sImpl.getOuterType(), namingTypes, levels, waves));
+        maxDep = Math.max(maxDep, computeJavaizeLevel((SchemaTypeImpl)namingTypes.get(sImpl), namingTypes, levels, waves));
+
+        int newLevel = maxDep + 1;
+        levels.put(sImpl, Integer.valueOf(newLevel));
+        while (waves.size() <= newLevel)
+            waves.add(new ArrayList());
+        ((List)waves.get(newLevel)).add(sImpl);
+        return newLevel;
+    }
+
     static void assignGlobalJavaNames(Collection schemaTypes)
     {
         HashSet usedNames = new HashSet();
@@ -211,6 +333,11 @@ public class StscJavaizer
     }
 
     static void secondPassProcessType(SchemaTypeImpl sImpl)
+    {
+        secondPassProcessType(sImpl, StscState.get());
+    }
+
+    static void secondPassProcessType(SchemaTypeImpl sImpl, StscState state)
     {
         if (isStringType(sImpl))
         {
@@ -223,9 +350,12 @@ public class StscJavaizer
                 //ERROR is found at > 3668
                 if (enumVals.length > MAX_ENUM_COUNT)
                 {
-                    StscState.get().warning("SchemaType Enumeration found with too many enumeration values " +
-                        "to create a Java enumeration. The base SchemaType \"" +
-                        sImpl.getBaseEnumType() + "\" will be used instead", XmlError.SEVERITY_WARNING, null);
+                    synchronized (state)
+                    {
+                        state.warning("SchemaType Enumeration found with too many enumeration values " +
+                            "to create a Java enumeration. The base SchemaType \"" +
+                            sImpl.getBaseEnumType() + "\" will be used instead", XmlError.SEVERITY_WARNING, null);
+                    }
 
                     sImpl = (SchemaTypeImpl) sImpl.getBaseEnumType();
                 }
@@ -258,21 +388,26 @@ public class StscJavaizer
     }
 
     static void javaizeType(SchemaTypeImpl sImpl)
+    {
+        javaizeType(sImpl, StscState.get());
+    }
+
+    static void javaizeType(SchemaTypeImpl sImpl, StscState state)
     {
         if (sImpl.isJavaized())
             return;
 
         SchemaTypeImpl baseType = (SchemaTypeImpl)sImpl.getBaseType();
         if (baseType != null)
-            javaizeType(baseType);
+            javaizeType(baseType, state);
         if (sImpl.getContentBasedOnType() != null && sImpl.getContentBasedOnType() != baseType)
-            javaizeType((SchemaTypeImpl) sImpl.getContentBasedOnType());
+            javaizeType((SchemaTypeImpl) sImpl.getContentBasedOnType(), state);
 
         sImpl.startJavaizing();
 
         sImpl.setCompiled(true);
 
-        secondPassProcessType(sImpl);
+        secondPassProcessType(sImpl, state);
 
         if (!sImpl.isSimpleType())
         {
@@ -300,9 +435,9 @@ public class StscJavaizer
             for (boolean doInherited = true; ; doInherited = false)
             {
                 if (eltProps.length > 0)
-                    assignJavaPropertyNames(usedPropNames, eltProps, baseType, doInherited);
+                    assignJavaPropertyNames(usedPropNames, eltProps, baseType, doInherited, state);
 
-                assignJavaPropertyNames(usedPropNames, attrProps, baseType, doInherited);
+                assignJavaPropertyNames(usedPropNames, attrProps, baseType, doInherited, state);
 
                 if (doInherited == false)
                     break;
@@ -323,7 +458,7 @@ public class StscJavaizer
         // assign java type names to anonymous types
         // for redefined types, this step was performed when javaizing the redefinition
         if (sImpl.getFullJavaName() != null || sImpl.getOuterType() != null)
-            assignJavaAnonymousTypeNames(sImpl);
+            assignJavaAnonymousTypeNames(sImpl, state);
 
         sImpl.finishJavaizing();
     }
@@ -352,10 +487,14 @@ public class StscJavaizer
     }
 
     static void assignJavaAnonymousTypeNames(SchemaTypeImpl outerType)
+    {
+        assignJavaAnonymousTypeNames(outerType, StscState.get());
+    }
+
+    static void assignJavaAnonymousTypeNames(SchemaTypeImpl outerType, StscState state)
     {
         Set usedTypeNames = new HashSet();
         SchemaType[] anonymousTypes = outerType.getAnonymousTypes();
-        StscState state = StscState.get();
 
         int nrOfAnonTypes = anonymousTypes.length;
         if (outerType.isRedefinition())
@@ -454,7 +593,11 @@ public class StscJavaizer
 
     static void assignJavaPropertyNames(Set usedNames, SchemaProperty[] props, SchemaType baseType, boolean doInherited)
     {
-        StscState state = StscState.get();
+        assignJavaPropertyNames(usedNames, props, baseType, doInherited, StscState.get());
+    }
+
+    static void assignJavaPropertyNames(Set usedNames, SchemaProperty[] props, SchemaType baseType, boolean doInherited, StscState state)
+    {
 
         // two passes: first deal with inherited properties, then with new ones.
         // this ensures that we match up with base class definitions cleanly